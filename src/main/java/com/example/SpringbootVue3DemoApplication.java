@@ -3,12 +3,14 @@ package com.example;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Spring Boot 应用启动类
  */
 @SpringBootApplication
 @MapperScan("com.example.mapper") // 扫描MyBatis Mapper接口
+@EnableScheduling // 启用定时任务（访问时间批量写入等）
 public class SpringbootVue3DemoApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,92 @@
+package com.example.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 异步任务线程池配置类
+ */
+@Configuration
+public class AsyncConfig {
+    
+    /**
+     * 密码哈希线程池大小，默认为CPU核数
+     */
+    @Value("${app.password-hash.pool-size:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int passwordHashPoolSize;
+    
+    /**
+     * 密码哈希等待队列容量，超出后立即拒绝（返回503）
+     */
+    @Value("${app.password-hash.queue-capacity:100}")
+    private int passwordHashQueueCapacity;
+    
+    /**
+     * 密码哈希完成后续处理线程池大小（Redis、数据库、JWT签发等I/O）
+     */
+    @Value("${app.password-hash.callback-pool-size:32}")
+    private int passwordHashCallbackPoolSize;
+    
+    /**
+     * 批量导入时密码加密的并行度，默认为CPU核数
+     */
+    @Value("${app.user-import.hash-pool-size:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int userImportHashPoolSize;
+    
+    @Value("${app.user-import.batch-size:500}")
+    private int userImportBatchSize;
+    
+    /**
+     * BCrypt校验和加密专用线程池
+     * 与Tomcat工作线程隔离，登录高峰时不会占满所有工作线程
+     */
+    @Bean
+    public ThreadPoolTaskExecutor passwordHashExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(passwordHashPoolSize);
+        executor.setMaxPoolSize(passwordHashPoolSize);
+        executor.setQueueCapacity(passwordHashQueueCapacity);
+        executor.setThreadNamePrefix("password-hash-");
+        // 默认AbortPolicy：队列满时抛出RejectedExecutionException
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+    
+    /**
+     * 密码哈希完成后的后续处理线程池
+     * 登录、新增/修改用户在哈希完成后还要访问Redis和数据库、签发JWT，这些阻塞操作不占用BCrypt线程；
+     * 队列不设上限（不拒绝），否则已完成哈希的请求将无法继续，背压由密码哈希线程池的队列负责
+     */
+    @Bean
+    public ThreadPoolTaskExecutor passwordHashCallbackExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(passwordHashCallbackPoolSize);
+        executor.setMaxPoolSize(passwordHashCallbackPoolSize);
+        executor.setThreadNamePrefix("password-hash-callback-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+    
+    /**
+     * 批量导入专用的密码加密线程池
+     * 与登录使用的线程池隔离，导入大文件时不影响登录；队列满时由导入线程自己执行，形成背压
+     */
+    @Bean
+    public ThreadPoolTaskExecutor userImportHashExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(userImportHashPoolSize);
+        executor.setMaxPoolSize(userImportHashPoolSize);
+        executor.setQueueCapacity(userImportBatchSize);
+        executor.setThreadNamePrefix("user-import-hash-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+}
@@ -2,13 +2,23 @@ package com.example.config;
 
 import com.example.service.UserService;
 import com.example.util.JwtUtil;
+import com.example.util.LogRateLimiter;
 import com.example.util.SecurityMonitorUtil;
+import com.example.util.TokenEpochRegistry;
+import com.example.util.VerifiedTokenCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -21,6 +31,7 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -34,17 +45,75 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtUtil jwtUtil;
     private final UserService userService;
     private final SecurityMonitorUtil securityMonitorUtil;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final MeterRegistry meterRegistry;
+    private final LogRateLimiter logRateLimiter;
+    private final TokenEpochRegistry tokenEpochRegistry;
+    
+    /**
+     * Token验签解析耗时（未命中已验签缓存时）
+     */
+    private Timer parseTimer;
+    
+    /**
+     * 自包含token模式下的本地用户状态缓存：用户ID -> 是否可用
+     */
+    private Cache<Long, Boolean> userStatusCache;
+    
+    /**
+     * 本地用户状态的有效期，超过后重新查询用户状态
+     */
+    @Value("${jwt.status-check-ttl:30s}")
+    private Duration statusCheckTtl;
+    
+    @Value("${jwt.status-cache-max-size:10000}")
+    private long statusCacheMaxSize;
     
     public JwtAuthenticationFilter(JwtUtil jwtUtil, UserService userService, 
-                                   SecurityMonitorUtil securityMonitorUtil) {
+                                   SecurityMonitorUtil securityMonitorUtil,
+                                   VerifiedTokenCache verifiedTokenCache,
+                                   MeterRegistry meterRegistry,
+                                   LogRateLimiter logRateLimiter,
+                                   TokenEpochRegistry tokenEpochRegistry) {
         this.jwtUtil = jwtUtil;
         this.userService = userService;
         this.securityMonitorUtil = securityMonitorUtil;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.meterRegistry = meterRegistry;
+        this.logRateLimiter = logRateLimiter;
+        this.tokenEpochRegistry = tokenEpochRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        userStatusCache = Caffeine.newBuilder()
+                .maximumSize(statusCacheMaxSize)
+                .expireAfterWrite(statusCheckTtl)
+                .build();
+        parseTimer = Timer.builder("jwt.parse.duration")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * 根据用户角色构建权限列表
+     * @param user 用户信息
+     * @return 权限列表
+     */
+    public static List<GrantedAuthority> resolveAuthorities(com.example.entity.User user) {
+        List<GrantedAuthority> authorities = new ArrayList<>();
+
+        // user table doesn't have role field, so we just add ROLE_USER
+        // if ("admin".equals(user.getRole())) {
+        //     authorities.add(new SimpleGrantedAuthority("ROLE_ADMIN"));
+        // }
+        authorities.add(new SimpleGrantedAuthority("ROLE_USER"));
+
+        return authorities;
     }
 
-    private UserDetails loadUserByUsername(String username) {
-        // 1. 从数据库/缓存加载用户信息
-        com.example.entity.User user = userService.findByUsername(username);
+    private UserDetails loadUserByUsername(String username, com.example.entity.User user) {
+        // 1. 检查用户是否存在
         if (user == null) {
             throw new UsernameNotFoundException("用户不存在");
         }
@@ -59,13 +128,38 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         // 3. 根据用户状态、角色构建权限列表
-        List<GrantedAuthority> authorities = new ArrayList<>();
+        return new User(username, "", resolveAuthorities(user));
+    }
 
-        // user table doesn't have role field, so we just add ROLE_USER
-        // if ("admin".equals(user.getRole())) {
-        //     authorities.add(new SimpleGrantedAuthority("ROLE_ADMIN"));
-        // }
-        authorities.add(new SimpleGrantedAuthority("ROLE_USER"));
+    /**
+     * 从自包含token的声明中构建用户详情，不访问Redis和数据库
+     */
+    private UserDetails loadUserFromClaims(String username, Long userId, Claims claims) {
+        // 1. 检查签发时的用户状态
+        Integer status = claims.get(JwtUtil.CLAIM_STATUS, Integer.class);
+        if (status != null && status == 0) {
+            throw new UsernameNotFoundException("用户已被禁用");
+        }
+
+        // 2. 本地短时状态校验，及时发现签发后被禁用或删除的用户
+        Boolean active = userStatusCache.get(userId, id -> {
+            com.example.entity.User user = userService.getById(id);
+            return user != null && username.equals(user.getUsername())
+                    && (user.getDeleted() == null || user.getDeleted() == 0)
+                    && (user.getStatus() == null || user.getStatus() != 0);
+        });
+        if (!Boolean.TRUE.equals(active)) {
+            throw new UsernameNotFoundException("用户不存在或已被禁用");
+        }
+
+        // 3. 权限列表直接取自已签名的声明
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        List<?> claimAuthorities = claims.get(JwtUtil.CLAIM_AUTHORITIES, List.class);
+        if (claimAuthorities != null) {
+            for (Object authority : claimAuthorities) {
+                authorities.add(new SimpleGrantedAuthority(String.valueOf(authority)));
+            }
+        }
 
         return new User(username, "", authorities);
     }
@@ -95,20 +189,36 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             
             if (StringUtils.hasText(token)) {
                 
-                // 解析token
-                Claims claims = jwtUtil.parseToken(token);
+                // 解析token，同一token在有效期内只验签一次
+                VerifiedTokenCache.VerifiedToken verified = verifiedTokenCache.get(token);
+                Claims claims = verified != null ? verified.getClaims() : parseTimer.record(() -> jwtUtil.parseToken(token));
                 String username = claims.getSubject();
                 
                 // 创建用户详情对象
-                UserDetails userDetails = loadUserByUsername(username);
+                UserDetails userDetails;
+                Long userId = claims.get(JwtUtil.CLAIM_USER_ID, Long.class);
+                if (userId != null) {
+                    // 自包含token：用户ID、状态和权限均来自声明
+                    userDetails = loadUserFromClaims(username, userId, claims);
+                } else {
+                    com.example.entity.User user = userService.findByUsername(username);
+                    userDetails = loadUserByUsername(username, user);
+                    userId = user.getId();
+                }
+                
+                // 签发后用户被强制下线（代数已更新）的token失效，只查本地快照
+                Long epoch = claims.get(JwtUtil.CLAIM_EPOCH, Long.class);
+                if ((epoch != null ? epoch : 0L) < tokenEpochRegistry.current(userId)) {
+                    throw new BadCredentialsException("Token已被撤销");
+                }
                 
-                // 获取用户ID用于安全监控
-                com.example.entity.User user = userService.findByUsername(username);
-                if (user != null) {
-                    // 检查访问异常（IP/设备变化），但在过滤器中只记录不阻止
-                    // 实际阻止逻辑在AuthController的refreshToken中实现
-                    securityMonitorUtil.checkAccessAnomaly(user.getId(), request);
+                if (verified == null) {
+                    verifiedTokenCache.put(token, claims, userId);
                 }
+                
+                // 检查访问异常（IP/设备变化），但在过滤器中只记录不阻止
+                // 实际阻止逻辑在AuthController的refreshToken中实现
+                securityMonitorUtil.checkAccessAnomaly(userId, request);
 
                 // 创建认证对象
                 UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
@@ -118,7 +228,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 SecurityContextHolder.getContext().setAuthentication(authentication);
             }
         } catch (Exception e) {
-            log.error("JWT认证失败: {}", e.getMessage());
+            // 无效token可能被大量发送，按调用点采样输出，日志量随攻击量按比例变化且有上限
+            long suppressed = logRateLimiter.trySample("jwt.auth.failure");
+            if (suppressed >= 0) {
+                log.warn("JWT认证失败: {}（已省略{}条）", e.getMessage(), suppressed);
+            }
             
             // 设置401响应
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
@@ -3,9 +3,13 @@ package com.example.config;
 import com.baomidou.mybatisplus.annotation.DbType;
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
 import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 public class MybatisPlusConfig {
     
@@ -16,4 +20,15 @@ public class MybatisPlusConfig {
         interceptor.addInnerInterceptor(new PaginationInnerInterceptor(DbType.MYSQL));
         return interceptor;
     }
+    
+    /**
+     * SQL执行耗时统计和慢查询采集插件
+     * MyBatis-Plus的InnerInterceptor只有执行前的回调，无法计时，因此使用标准的MyBatis插件
+     */
+    @Bean
+    public SqlMetricsInterceptor sqlMetricsInterceptor(MeterRegistry meterRegistry,
+                                                       @Value("${app.sql.slow-threshold:200ms}") Duration slowThreshold,
+                                                       @Value("${app.sql.slow-capacity:100}") int slowCapacity) {
+        return new SqlMetricsInterceptor(meterRegistry, slowThreshold, slowCapacity);
+    }
 }
@@ -1,10 +1,14 @@
 package com.example.config;
 
+import com.example.util.CompactRedisSerializer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 /**
@@ -13,6 +17,18 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 @Configuration
 public class RedisConfig {
     
+    /**
+     * 值序列化方式：compact（紧凑二进制，默认）或 json
+     */
+    @Value("${app.redis.value-serializer:compact}")
+    private String valueSerializer;
+    
+    /**
+     * 紧凑序列化时的压缩阈值（字节），超过该长度的值使用Deflate压缩
+     */
+    @Value("${app.redis.compression-threshold:1024}")
+    private int compressionThreshold;
+    
     /**
      * 配置RedisTemplate<String, Object>
      */
@@ -28,12 +44,25 @@ public class RedisConfig {
         redisTemplate.setHashKeySerializer(new StringRedisSerializer());
         
         // 设置Value序列化器
-        redisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
-        redisTemplate.setHashValueSerializer(new GenericJackson2JsonRedisSerializer());
+        RedisSerializer<Object> serializer = "json".equalsIgnoreCase(valueSerializer)
+                ? new GenericJackson2JsonRedisSerializer()
+                : new CompactRedisSerializer(compressionThreshold);
+        redisTemplate.setValueSerializer(serializer);
+        redisTemplate.setHashValueSerializer(serializer);
         
         // 初始化RedisTemplate
         redisTemplate.afterPropertiesSet();
         
         return redisTemplate;
     }
+    
+    /**
+     * 配置Redis消息监听容器，用于跨节点的缓存失效通知
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
 }
\ No newline at end of file
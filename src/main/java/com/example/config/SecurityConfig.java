@@ -1,6 +1,8 @@
 package com.example.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -60,8 +62,10 @@ public class SecurityConfig {
                 .requestMatchers("/auth/login").permitAll()
                 .requestMatchers("/auth/refresh").permitAll()
                 .requestMatchers("/auth/logout").permitAll()
-                // 允许 actuator 健康检查
-                .requestMatchers("/actuator/**").permitAll()
+                // actuator 端点只在独立的管理端口上提供（默认只监听本机），由网络隔离限制访问
+                .requestMatchers(EndpointRequest.toAnyEndpoint()).permitAll()
+                // 异步请求的再次分派（CompletableFuture返回值），首次分派时已完成认证
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 // 允许OPTIONS请求（CORS预检）
                 .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
                 // 其他请求需要认证
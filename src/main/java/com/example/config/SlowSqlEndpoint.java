@@ -0,0 +1,32 @@
+package com.example.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 慢查询Actuator端点：GET /actuator/slowsql 查看耗时最长的慢查询（按耗时降序），DELETE 清空
+ */
+@Component
+@Endpoint(id = "slowsql")
+public class SlowSqlEndpoint {
+    
+    private final SqlMetricsInterceptor sqlMetricsInterceptor;
+    
+    public SlowSqlEndpoint(SqlMetricsInterceptor sqlMetricsInterceptor) {
+        this.sqlMetricsInterceptor = sqlMetricsInterceptor;
+    }
+    
+    @ReadOperation
+    public List<SqlMetricsInterceptor.SlowSql> slowSqls() {
+        return sqlMetricsInterceptor.getSlowSqls();
+    }
+    
+    @DeleteOperation
+    public void clear() {
+        sqlMetricsInterceptor.clearSlowSqls();
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.config;
+
+import com.baomidou.mybatisplus.core.toolkit.PluginUtils;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * SQL执行耗时统计插件
+ * 拦截StatementHandler的执行方法，耗时包含JDBC执行和结果映射；
+ * 指标 mybatis.statement.duration，标签 statement（Mapper方法ID）和 type（SELECT/INSERT/UPDATE/DELETE），均为有限取值。
+ * 超过慢查询阈值的语句按耗时保留最慢的N条（规范化SQL和参数类型，不含参数值），通过 /actuator/slowsql 查看；
+ * 未超过阈值时只记录耗时，不做任何字符串处理或输出
+ */
+@Intercepts({
+        @Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
+        @Signature(type = StatementHandler.class, method = "queryCursor", args = {Statement.class}),
+        @Signature(type = StatementHandler.class, method = "update", args = {Statement.class})
+})
+public class SqlMetricsInterceptor implements Interceptor {
+    
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    
+    /**
+     * IN列表等连续的占位符合并为一个，使参数个数不同的同一语句规范化后相同
+     */
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+    
+    private final MeterRegistry meterRegistry;
+    
+    private final long slowThresholdNanos;
+    
+    private final int slowSqlCapacity;
+    
+    /**
+     * 耗时最小堆，堆顶是已保留记录中最快的一条，新记录更慢时替换堆顶
+     */
+    private final PriorityQueue<SlowSql> slowSqls;
+    
+    /**
+     * 堆已满时的堆顶耗时，不超过该值的慢查询无需加锁和规范化SQL即可丢弃
+     */
+    private volatile long slowSqlFloorNanos;
+    
+    /**
+     * 按Mapper方法ID缓存Timer，避免每次执行都构建并在注册表中查找
+     */
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    
+    public SqlMetricsInterceptor(MeterRegistry meterRegistry, Duration slowThreshold, int slowSqlCapacity) {
+        this.meterRegistry = meterRegistry;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.slowSqlCapacity = Math.max(1, slowSqlCapacity);
+        this.slowSqls = new PriorityQueue<>(this.slowSqlCapacity, Comparator.comparingLong(SlowSql::getDurationNanos));
+    }
+    
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        StatementHandler handler = PluginUtils.realTarget(invocation.getTarget());
+        MappedStatement ms = PluginUtils.mpStatementHandler(handler).mappedStatement();
+        
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            timers.computeIfAbsent(ms.getId(), id -> Timer.builder("mybatis.statement.duration")
+                            .tag("statement", id)
+                            .tag("type", ms.getSqlCommandType().name())
+                            .publishPercentileHistogram()
+                            .register(meterRegistry))
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            if (elapsed >= slowThresholdNanos && elapsed > slowSqlFloorNanos) {
+                recordSlowSql(ms, handler.getBoundSql(), elapsed);
+            }
+        }
+    }
+    
+    /**
+     * 获取保留的最慢的慢查询，按耗时从高到低排序
+     */
+    public List<SlowSql> getSlowSqls() {
+        List<SlowSql> result;
+        synchronized (slowSqls) {
+            result = new ArrayList<>(slowSqls);
+        }
+        result.sort(Comparator.comparingLong(SlowSql::getDurationNanos).reversed());
+        return result;
+    }
+    
+    /**
+     * 清空保留的慢查询
+     */
+    public void clearSlowSqls() {
+        synchronized (slowSqls) {
+            slowSqls.clear();
+            slowSqlFloorNanos = 0;
+        }
+    }
+    
+    private void recordSlowSql(MappedStatement ms, BoundSql boundSql, long elapsedNanos) {
+        String sql = WHITESPACE.matcher(boundSql.getSql()).replaceAll(" ").trim();
+        sql = PLACEHOLDER_LIST.matcher(sql).replaceAll("?...");
+        
+        // 只记录参数类型，不记录参数值
+        List<String> parameterTypes = new ArrayList<>(boundSql.getParameterMappings().size());
+        for (ParameterMapping mapping : boundSql.getParameterMappings()) {
+            Class<?> javaType = mapping.getJavaType();
+            parameterTypes.add(javaType != null ? javaType.getSimpleName() : "Object");
+        }
+        
+        SlowSql slowSql = new SlowSql(ms.getId(), sql, parameterTypes, elapsedNanos / 1_000_000.0, new Date(), elapsedNanos);
+        synchronized (slowSqls) {
+            if (slowSqls.size() >= slowSqlCapacity) {
+                // 并发记录时堆顶可能已变化，加锁后重新比较
+                if (elapsedNanos <= slowSqls.peek().getDurationNanos()) {
+                    return;
+                }
+                slowSqls.poll();
+            }
+            slowSqls.offer(slowSql);
+            if (slowSqls.size() >= slowSqlCapacity) {
+                slowSqlFloorNanos = slowSqls.peek().getDurationNanos();
+            }
+        }
+    }
+    
+    /**
+     * 慢查询记录
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class SlowSql {
+        /**
+         * Mapper方法ID
+         */
+        private final String statement;
+        
+        /**
+         * 规范化后的SQL
+         */
+        private final String sql;
+        
+        /**
+         * 绑定参数类型
+         */
+        private final List<String> parameterTypes;
+        
+        /**
+         * 耗时（毫秒）
+         */
+        private final double durationMs;
+        
+        /**
+         * 执行时间
+         */
+        private final Date timestamp;
+        
+        /**
+         * 耗时（纳秒），用于排序，不输出
+         */
+        @JsonIgnore
+        private final long durationNanos;
+    }
+}
@@ -1,18 +1,25 @@
 package com.example.controller;
 
+import com.example.config.JwtAuthenticationFilter;
 import com.example.entity.User;
+import com.example.service.PasswordHashService;
 import com.example.service.RefreshTokenService;
 import com.example.service.UserService;
 import com.example.util.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 认证控制器
@@ -28,7 +35,7 @@ public class AuthController {
     private JwtUtil jwtUtil;
     
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashService passwordHashService;
     
     @Autowired
     private RefreshTokenService refreshTokenService;
@@ -41,107 +48,150 @@ public class AuthController {
     @Autowired
     private SecurityMonitorUtil securityMonitorUtil;
     
+    @Autowired
+    private TokenEpochRegistry tokenEpochRegistry;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
     /**
      * 登录接口
+     * 密码校验在专用线程池中异步执行，线程池繁忙时返回503
      * @param loginRequest 登录请求参数
      * @param request HTTP请求
      * @param response HTTP响应
      * @return 登录结果，包含加密的token和用户信息
      */
     @PostMapping("/login")
-    public ResultVO<?> login(@RequestBody LoginRequest loginRequest, 
-                             HttpServletRequest request, 
-                             HttpServletResponse response) {
+    public CompletableFuture<ResultVO<?>> login(@RequestBody LoginRequest loginRequest, 
+                                                HttpServletRequest request, 
+                                                HttpServletResponse response) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return doLogin(loginRequest, request, response)
+                    .whenComplete((result, e) -> recordAuthMetrics(sample, "login", result));
+        } catch (RuntimeException e) {
+            recordAuthMetrics(sample, "login", null);
+            throw e;
+        }
+    }
+    
+    private CompletableFuture<ResultVO<?>> doLogin(LoginRequest loginRequest, HttpServletRequest request,
+                                                   HttpServletResponse response) {
+        String clientIp = securityMonitorUtil.getClientIp(request);
         try {
             // 1. 检查登录尝试次数是否过多
-            if (securityMonitorUtil.isLoginBlocked(loginRequest.getUsername())) {
-                return ResultVO.error("登录尝试次数过多，请15分钟后再试");
+            SecurityMonitorUtil.LoginThrottleStatus throttleStatus =
+                    securityMonitorUtil.checkLoginThrottle(loginRequest.getUsername(), clientIp);
+            if (throttleStatus.isBlocked()) {
+                long retryMinutes = Math.max(1, (throttleStatus.getRetryAfterSeconds() + 59) / 60);
+                return CompletableFuture.completedFuture(ResultVO.error("登录尝试次数过多，请" + retryMinutes + "分钟后再试"));
             }
             
             // 2. 从数据库加载用户信息
             User user = userService.findByUsername(loginRequest.getUsername());
             if (user == null) {
-                securityMonitorUtil.recordLoginAttempt(loginRequest.getUsername());
-                return ResultVO.error("用户名或密码错误");
+                securityMonitorUtil.recordLoginAttempt(loginRequest.getUsername(), clientIp);
+                return CompletableFuture.completedFuture(ResultVO.error("用户名或密码错误"));
             }
             
             // 3. 检查用户状态
             if (user.getDeleted() != null && user.getDeleted() == 1) {
-                securityMonitorUtil.recordLoginAttempt(loginRequest.getUsername());
-                return ResultVO.error("用户已被删除");
+                securityMonitorUtil.recordLoginAttempt(loginRequest.getUsername(), clientIp);
+                return CompletableFuture.completedFuture(ResultVO.error("用户已被删除"));
             }
             
             if (user.getStatus() != null && user.getStatus() == 0) {
-                securityMonitorUtil.recordLoginAttempt(loginRequest.getUsername());
-                return ResultVO.error("用户已被禁用");
+                securityMonitorUtil.recordLoginAttempt(loginRequest.getUsername(), clientIp);
+                return CompletableFuture.completedFuture(ResultVO.error("用户已被禁用"));
             }
             
-            // 4. 验证密码
-            String storedPassword = user.getPassword();
+            // 4. 验证密码（缓存的用户不含密码，单独查询密码哈希）
+            String storedPassword = userService.getPasswordHash(user.getId());
             String inputPassword = loginRequest.getPassword();
             
             // 检查是否是测试用户的无效哈希
             boolean isInvalidTestHash = storedPassword != null && 
                 storedPassword.equals("$2a$10$7P5q5e5z5r5t5y5u5i5o5p5a5s5d5f5g5h5j5k5l5m5n5b5v5c5x5w5e5r5t");
             
-            boolean passwordValid = false;
+            CompletableFuture<Boolean> passwordCheck;
             
             if (isInvalidTestHash && "123456".equals(inputPassword)) {
                 // 测试密码通过，更新数据库为正确的BCrypt哈希
-                passwordValid = true;
-                String correctHash = passwordEncoder.encode("123456");
-                user.setPassword(correctHash);
-                userService.updateById(user);
+                passwordCheck = passwordHashService.encode("123456").thenApply(correctHash -> {
+                    User passwordUpdate = new User();
+                    passwordUpdate.setId(user.getId());
+                    passwordUpdate.setPassword(correctHash);
+                    userService.updateById(passwordUpdate);
+                    return true;
+                });
             } else {
                 // 正常密码验证
-                passwordValid = passwordEncoder.matches(inputPassword, storedPassword);
-            }
-            
-            if (!passwordValid) {
-                securityMonitorUtil.recordLoginAttempt(loginRequest.getUsername());
-                return ResultVO.error("用户名或密码错误");
-            }
-            
-            // 5. 清除登录尝试记录
-            securityMonitorUtil.clearLoginAttempts(loginRequest.getUsername());
-            
-            // 6. 检查访问异常（IP/设备变化）
-            boolean hasAnomaly = securityMonitorUtil.checkAccessAnomaly(user.getId(), request);
-            if (hasAnomaly) {
-                // 检测到异常访问，可以选择发送警报或记录日志
-                // 暂时不阻止登录，但记录异常
+                passwordCheck = passwordHashService.matches(inputPassword, storedPassword);
             }
             
-            // 7. 生成JWT token和refresh token
-            String token = jwtUtil.generateToken(user.getUsername());
-            
-            // 创建refresh token
-            String refreshToken = refreshTokenService.createRefreshToken(user.getId(), user.getUsername());
-            
-            // 8. 设置Refresh Token为HttpOnly Cookie
-            int refreshTokenMaxAge = (int) (jwtUtil.getRefreshExpire() / 1000); // 转换为秒
-            cookieUtil.addRefreshTokenCookie(response, refreshToken, refreshTokenMaxAge);
-            
-            // 9. 构建返回数据（返回Access Token和用户信息）
-            Map<String, Object> data = new HashMap<>();
-            data.put("token", token); // 返回JWT Access Token
-            
-            // 构建用户信息（不包含密码）
-            Map<String, Object> userInfo = new HashMap<>();
-            userInfo.put("id", user.getId());
-            userInfo.put("username", user.getUsername());
-            userInfo.put("nickname", user.getNickname());
-            userInfo.put("email", user.getEmail());
-            userInfo.put("phone", user.getPhone());
-            userInfo.put("gender", user.getGender());
-            data.put("user", userInfo);
-            
-            return ResultVO.success(data);
+            return passwordCheck
+                    .<ResultVO<?>>thenApply(passwordValid ->
+                            completeLogin(user, passwordValid, loginRequest, clientIp, request, response))
+                    .exceptionally(e -> {
+                        securityMonitorUtil.recordLoginAttempt(loginRequest.getUsername(), clientIp);
+                        return ResultVO.error("用户名或密码错误");
+                    });
             
+        } catch (RejectedExecutionException e) {
+            // 密码哈希线程池繁忙，交由全局异常处理返回503
+            throw e;
         } catch (Exception e) {
-            securityMonitorUtil.recordLoginAttempt(loginRequest.getUsername());
+            securityMonitorUtil.recordLoginAttempt(loginRequest.getUsername(), clientIp);
+            return CompletableFuture.completedFuture(ResultVO.error("用户名或密码错误"));
+        }
+    }
+    
+    /**
+     * 密码校验完成后的登录处理
+     */
+    private ResultVO<?> completeLogin(User user, boolean passwordValid, LoginRequest loginRequest, String clientIp,
+                                      HttpServletRequest request, HttpServletResponse response) {
+        if (!passwordValid) {
+            securityMonitorUtil.recordLoginAttempt(loginRequest.getUsername(), clientIp);
             return ResultVO.error("用户名或密码错误");
         }
+        
+        // 5. 清除登录尝试记录
+        securityMonitorUtil.clearLoginAttempts(loginRequest.getUsername());
+        
+        // 6. 检查访问异常（IP/设备变化）
+        boolean hasAnomaly = securityMonitorUtil.checkAccessAnomaly(user.getId(), request);
+        if (hasAnomaly) {
+            // 检测到异常访问，可以选择发送警报或记录日志
+            // 暂时不阻止登录，但记录异常
+        }
+        
+        // 7. 生成JWT token和refresh token
+        String token = createAccessToken(user);
+        
+        // 创建refresh token
+        String refreshToken = refreshTokenService.createRefreshToken(user.getId(), user.getUsername());
+        
+        // 8. 设置Refresh Token为HttpOnly Cookie
+        int refreshTokenMaxAge = (int) (jwtUtil.getRefreshExpire() / 1000); // 转换为秒
+        cookieUtil.addRefreshTokenCookie(response, refreshToken, refreshTokenMaxAge);
+        
+        // 9. 构建返回数据（返回Access Token和用户信息）
+        Map<String, Object> data = new HashMap<>();
+        data.put("token", token); // 返回JWT Access Token
+        
+        // 构建用户信息（不包含密码）
+        Map<String, Object> userInfo = new HashMap<>();
+        userInfo.put("id", user.getId());
+        userInfo.put("username", user.getUsername());
+        userInfo.put("nickname", user.getNickname());
+        userInfo.put("email", user.getEmail());
+        userInfo.put("phone", user.getPhone());
+        userInfo.put("gender", user.getGender());
+        data.put("user", userInfo);
+        
+        return ResultVO.success(data);
     }
     
     /**
@@ -152,6 +202,13 @@ public class AuthController {
      */
     @PostMapping("/refresh")
     public ResultVO<?> refreshToken(HttpServletRequest request, HttpServletResponse response) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        ResultVO<?> result = doRefreshToken(request, response);
+        recordAuthMetrics(sample, "refresh", result);
+        return result;
+    }
+    
+    private ResultVO<?> doRefreshToken(HttpServletRequest request, HttpServletResponse response) {
         try {
             // 1. 从Cookie中获取Refresh Token
             String refreshTokenStr;
@@ -185,23 +242,22 @@ public class AuthController {
                 return ResultVO.error("检测到异常访问，请重新登录");
             }
             
-            // 5. 验证refresh token
-            if (!refreshTokenService.validateToken(user.getId(), refreshTokenStr)) {
+            // 5. 验证并轮换refresh token，同时生成新的access token（一次Redis脚本调用）
+            // 同一令牌的并发刷新（如多个标签页）共享同一次轮换的结果
+            RefreshTokenService.RotationResult rotation = refreshTokenService.rotateToken(
+                    user.getId(), user.getUsername(), refreshTokenStr, () -> createAccessToken(user));
+            if (rotation == null) {
                 cookieUtil.clearRefreshTokenCookie(response);
                 return ResultVO.error("刷新令牌已过期或无效");
             }
+            String newToken = rotation.getAccessToken();
+            String newRefreshToken = rotation.getRefreshToken();
             
-            // 6. 生成新的access token
-            String newToken = jwtUtil.generateToken(user.getUsername());
-            
-            // 7. 生成新的refresh token
-            String newRefreshToken = refreshTokenService.createRefreshToken(user.getId(), user.getUsername());
-            
-            // 8. 更新Refresh Token Cookie
+            // 6. 更新Refresh Token Cookie
             int refreshTokenMaxAge = (int) (jwtUtil.getRefreshExpire() / 1000);
             cookieUtil.addRefreshTokenCookie(response, newRefreshToken, refreshTokenMaxAge);
             
-            // 9. 构建返回数据（返回新的Access Token）
+            // 7. 构建返回数据（返回新的Access Token）
             Map<String, Object> data = new HashMap<>();
             data.put("token", newToken);
             
@@ -221,6 +277,13 @@ public class AuthController {
      */
     @PostMapping("/logout")
     public ResultVO<?> logout(HttpServletRequest request, HttpServletResponse response) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        ResultVO<?> result = doLogout(request, response);
+        recordAuthMetrics(sample, "logout", result);
+        return result;
+    }
+    
+    private ResultVO<?> doLogout(HttpServletRequest request, HttpServletResponse response) {
         try {
             // 1. 从Cookie中获取Refresh Token
             String refreshTokenStr = cookieUtil.getRefreshTokenFromRequest(request).orElse(null);
@@ -248,6 +311,39 @@ public class AuthController {
         }
     }
     
+    /**
+     * 记录认证接口耗时，指标 auth.request，标签 operation（login/refresh/logout）和 outcome（success/failure）
+     */
+    private void recordAuthMetrics(Timer.Sample sample, String operation, ResultVO<?> result) {
+        String outcome = result != null && result.getCode() == 200 ? "success" : "failure";
+        sample.stop(Timer.builder("auth.request")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+    
+    /**
+     * 生成Access Token，开启自包含模式时携带用户ID、状态和权限
+     * @param user 用户信息
+     * @return JWT Access Token
+     */
+    private String createAccessToken(User user) {
+        Map<String, Object> claims;
+        if (jwtUtil.isSelfContained()) {
+            List<String> authorities = JwtAuthenticationFilter.resolveAuthorities(user).stream()
+                    .map(GrantedAuthority::getAuthority)
+                    .toList();
+            claims = jwtUtil.buildUserClaims(user.getId(), user.getStatus(), authorities);
+        } else {
+            claims = new HashMap<>();
+        }
+        
+        // 写入用户当前的Token代数（读取Redis中的权威值），强制下线后代数更新，此前签发的token随即失效
+        claims.put(JwtUtil.CLAIM_EPOCH, tokenEpochRegistry.load(user.getId()));
+        return jwtUtil.generateToken(user.getUsername(), claims);
+    }
+    
     /**
      * 登录请求参数类
      */
@@ -1,14 +1,29 @@
 package com.example.controller;
 
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.example.entity.User;
+import com.example.service.PasswordHashService;
+import com.example.service.UserImportService;
 import com.example.service.UserService;
+import com.example.util.PageVO;
 import com.example.util.ResultVO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 用户控制器
@@ -21,25 +36,37 @@ public class UserController {
     private UserService userService;
     
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashService passwordHashService;
+    
+    @Autowired
+    private UserImportService userImportService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    /**
+     * 批量查询单次允许的ID和用户名总数
+     */
+    @Value("${app.user.batch-get-max:200}")
+    private int batchGetMax;
     
     /**
      * 分页查询用户列表
-     * @param pageNum 页码
-     * @param pageSize 每页条数
-     * @param username 用户名（模糊查询）
+     * pageMode为cursor时使用游标分页，返回nextCursor用于查询下一页；
+     * totalMode指定总数统计方式：exact（默认）、cached、estimated、none
+     * @param params 查询参数（页码、每页条数、用户名、分页模式、游标）
      * @return 分页结果
      */
     @PostMapping("/page")
     public ResultVO<?> pageUser(@RequestBody UserQueryParams params) {
-        Page<User> page = userService.pageUser(params.getPageNum(), params.getPageSize(), params.getUsername());
-        
-        // 构建返回数据
-        java.util.Map<String, Object> result = new java.util.HashMap<>();
-        result.put("list", page.getRecords());
-        result.put("total", page.getTotal());
+        if ("cursor".equalsIgnoreCase(params.getPageMode())) {
+            return ResultVO.success(userService.pageUserByCursor(
+                    params.getCursor(), params.getPageSize(), params.getUsername()));
+        }
         
-        return ResultVO.success(result);
+        PageVO<User> page = userService.pageUser(params.getPageNum(), params.getPageSize(), params.getUsername(),
+                UserService.TotalMode.of(params.getTotalMode()));
+        return ResultVO.success(page);
     }
     
     /**
@@ -67,19 +94,174 @@ public class UserController {
         return ResultVO.success(user);
     }
     
+    /**
+     * 批量查询用户，可同时按ID和用户名查询
+     * 优先从用户缓存获取，未命中的ID和用户名各自只查询一次数据库
+     * @param request 用户ID列表和用户名列表
+     * @return 存在的用户列表（先按ID、再按用户名的请求顺序，已去重）
+     */
+    @PostMapping("/batch-get")
+    public ResultVO<?> batchGetUser(@RequestBody BatchGetRequest request) {
+        // 去掉空值、空白用户名和重复项后再做数量校验和查询
+        List<Long> ids = request.getIds() == null ? List.of() : request.getIds().stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        List<String> usernames = request.getUsernames() == null ? List.of() : request.getUsernames().stream()
+                .filter(username -> username != null && !username.isBlank())
+                .distinct()
+                .toList();
+        if (ids.size() + usernames.size() > batchGetMax) {
+            return ResultVO.error("单次最多查询" + batchGetMax + "个用户");
+        }
+        
+        Map<Long, User> users = new LinkedHashMap<>();
+        for (User user : userService.getByIds(ids)) {
+            users.put(user.getId(), user);
+        }
+        for (User user : userService.getByUsernames(usernames)) {
+            users.putIfAbsent(user.getId(), user);
+        }
+        return ResultVO.success(new ArrayList<>(users.values()));
+    }
+    
     /**
      * 新增用户
      * @param user 用户信息
      * @return 操作结果
      */
     @PostMapping
-    public ResultVO<?> addUser(@RequestBody User user) {
-        // 加密密码
+    public CompletableFuture<ResultVO<?>> addUser(@RequestBody User user) {
+        // 加密密码（在密码哈希线程池中执行）
         if (user.getPassword() != null && !user.getPassword().isEmpty()) {
-            user.setPassword(passwordEncoder.encode(user.getPassword()));
+            return passwordHashService.encode(user.getPassword()).thenApply(encodedPassword -> {
+                user.setPassword(encodedPassword);
+                userService.save(user);
+                return ResultVO.success();
+            });
         }
         userService.save(user);
-        return ResultVO.success();
+        return CompletableFuture.completedFuture(ResultVO.success());
+    }
+    
+    /**
+     * 批量导入用户
+     * 请求体为CSV（首行表头）或NDJSON，逐行流式读取；响应为NDJSON，
+     * 每行一条记录：error（某行失败原因）、progress（每批次完成后的进度）、summary（最终结果）
+     * @param format 文件格式：csv（默认）或 ndjson
+     * @param request HTTP请求
+     * @param response HTTP响应
+     */
+    @PostMapping("/import")
+    public void importUsers(@RequestParam(defaultValue = "csv") String format,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (request.getCharacterEncoding() == null) {
+            request.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        }
+        response.setContentType("application/x-ndjson;charset=UTF-8");
+        PrintWriter writer = response.getWriter();
+        
+        try {
+            UserImportService.ImportResult result = userImportService.importUsers(request.getReader(), format,
+                    new UserImportService.ImportListener() {
+                        @Override
+                        public void onError(long line, String username, String message) {
+                            Map<String, Object> record = new LinkedHashMap<>();
+                            record.put("type", "error");
+                            record.put("line", line);
+                            record.put("username", username);
+                            record.put("message", message);
+                            writeLine(writer, record);
+                        }
+                        
+                        @Override
+                        public void onProgress(UserImportService.ImportResult progress) {
+                            writeLine(writer, importRecord("progress", progress));
+                            writer.flush();
+                        }
+                    });
+            writeLine(writer, importRecord("summary", result));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("type", "error");
+            record.put("message", e.getMessage());
+            writeLine(writer, record);
+        }
+        writer.flush();
+    }
+    
+    private Map<String, Object> importRecord(String type, UserImportService.ImportResult result) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("type", type);
+        record.put("processed", result.getProcessed());
+        record.put("imported", result.getImported());
+        record.put("failed", result.getFailed());
+        return record;
+    }
+    
+    private void writeLine(PrintWriter writer, Map<String, Object> record) {
+        try {
+            writer.write(objectMapper.writeValueAsString(record));
+            writer.write('\n');
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * 导出用户
+     * 按分页查询的过滤条件流式导出所有用户（不含密码），逐行写入响应，内存占用与导出行数无关
+     * @param username 用户名（模糊查询，可选）
+     * @param format 导出格式：csv（默认）或 ndjson
+     * @param response HTTP响应
+     */
+    @GetMapping("/export")
+    public void exportUsers(@RequestParam(required = false) String username,
+                            @RequestParam(defaultValue = "csv") String format,
+                            HttpServletResponse response) throws IOException {
+        boolean csv = !"ndjson".equalsIgnoreCase(format);
+        response.setContentType(csv ? "text/csv;charset=UTF-8" : "application/x-ndjson;charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=users." + (csv ? "csv" : "ndjson"));
+        PrintWriter writer = response.getWriter();
+        
+        if (csv) {
+            writer.write("id,username,nickname,email,phone,gender,status,createTime,updateTime\n");
+        }
+        userService.streamUsers(username, user -> {
+            if (csv) {
+                writer.write(user.getId() + "," + csvField(user.getUsername()) + "," + csvField(user.getNickname())
+                        + "," + csvField(user.getEmail()) + "," + csvField(user.getPhone())
+                        + "," + csvField(user.getGender()) + "," + csvField(user.getStatus())
+                        + "," + csvField(user.getCreateTime() != null ? user.getCreateTime().getTime() : null)
+                        + "," + csvField(user.getUpdateTime() != null ? user.getUpdateTime().getTime() : null) + "\n");
+            } else {
+                try {
+                    writer.write(objectMapper.writeValueAsString(user));
+                    writer.write('\n');
+                } catch (JsonProcessingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        writer.flush();
+    }
+    
+    /**
+     * CSV字段转义：包含逗号、引号或换行时用双引号包裹
+     * 以 = + - @ 制表符或回车开头的值在前面加单引号并包裹，防止在表格软件中被当作公式执行
+     */
+    private String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (!text.isEmpty() && "=+-@\t\r".indexOf(text.charAt(0)) >= 0) {
+            return "\"'" + text.replace("\"", "\"\"") + "\"";
+        }
+        if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+        return text;
     }
     
     /**
@@ -88,19 +270,20 @@ public class UserController {
      * @return 操作结果
      */
     @PutMapping
-    public ResultVO<?> updateUser(@RequestBody User user) {
-        // 如果密码不为空，则加密密码
+    public CompletableFuture<ResultVO<?>> updateUser(@RequestBody User user) {
+        // 如果密码不为空，则加密密码（在密码哈希线程池中执行）
         if (user.getPassword() != null && !user.getPassword().isEmpty()) {
-            user.setPassword(passwordEncoder.encode(user.getPassword()));
-        } else {
-            // 密码为空，保留原密码
-            User existingUser = userService.getById(user.getId());
-            if (existingUser != null) {
-                user.setPassword(existingUser.getPassword());
-            }
+            return passwordHashService.encode(user.getPassword()).thenApply(encodedPassword -> {
+                user.setPassword(encodedPassword);
+                userService.updateById(user);
+                return ResultVO.success();
+            });
         }
+        
+        // 密码为空，保留原密码（null字段不参与更新，无需查询原用户）
+        user.setPassword(null);
         userService.updateById(user);
-        return ResultVO.success();
+        return CompletableFuture.completedFuture(ResultVO.success());
     }
     
     /**
@@ -125,6 +308,15 @@ public class UserController {
         return ResultVO.success();
     }
     
+    /**
+     * 批量查询参数类
+     */
+    @Data
+    public static class BatchGetRequest {
+        private List<Long> ids;
+        private List<String> usernames;
+    }
+    
     /**
      * 用户查询参数类
      */
@@ -133,6 +325,21 @@ public class UserController {
         private Integer pageSize = 10;
         private String username;
         
+        /**
+         * 分页模式：offset（默认，按页码）或cursor（按游标）
+         */
+        private String pageMode;
+        
+        /**
+         * 游标分页时上一页返回的游标
+         */
+        private String cursor;
+        
+        /**
+         * 总数统计方式：exact（默认）、cached、estimated、none
+         */
+        private String totalMode;
+        
         // getter和setter方法
         public Integer getPageNum() {
             return pageNum;
@@ -157,5 +364,29 @@ public class UserController {
         public void setUsername(String username) {
             this.username = username;
         }
+        
+        public String getPageMode() {
+            return pageMode;
+        }
+        
+        public void setPageMode(String pageMode) {
+            this.pageMode = pageMode;
+        }
+        
+        public String getCursor() {
+            return cursor;
+        }
+        
+        public void setCursor(String cursor) {
+            this.cursor = cursor;
+        }
+        
+        public String getTotalMode() {
+            return totalMode;
+        }
+        
+        public void setTotalMode(String totalMode) {
+            this.totalMode = totalMode;
+        }
     }
 }
\ No newline at end of file
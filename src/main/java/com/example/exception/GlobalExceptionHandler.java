@@ -1,10 +1,16 @@
 package com.example.exception;
 
+import com.example.util.LogRateLimiter;
 import com.example.util.ResultVO;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * 全局异常处理器
  */
@@ -12,6 +18,9 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 @RestControllerAdvice
 public class GlobalExceptionHandler {
     
+    @Autowired
+    private LogRateLimiter logRateLimiter;
+    
     /**
      * 处理业务异常
      */
@@ -39,6 +48,19 @@ public class GlobalExceptionHandler {
         return ResultVO.error(400, "参数错误: " + e.getMessage());
     }
     
+    /**
+     * 处理线程池繁忙（如密码哈希队列已满），快速失败返回503
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ResultVO<?> handleRejectedExecutionException(RejectedExecutionException e) {
+        long suppressed = logRateLimiter.tryAcquire("request.rejected");
+        if (suppressed >= 0) {
+            log.warn("系统繁忙，请求被拒绝: {}（已省略{}条）", e.getMessage(), suppressed);
+        }
+        return ResultVO.error(503, "系统繁忙，请稍后重试");
+    }
+    
     /**
      * 处理其他异常
      */
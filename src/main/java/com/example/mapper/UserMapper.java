@@ -1,10 +1,46 @@
 package com.example.mapper;
 
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.toolkit.Constants;
 import com.example.entity.User;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
 /**
  * 用户Mapper接口
  */
 public interface UserMapper extends BaseMapper<User> {
+    
+    /**
+     * 根据表统计信息估算用户表行数（包含已逻辑删除的行），不扫描表
+     * @return 估算行数
+     */
+    @Select("SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'user'")
+    Long estimateRowCount();
+    
+    /**
+     * 流式读取所有未删除用户的ID和用户名（逐行回调，不在内存中构建完整列表）
+     * @param handler 逐行处理回调
+     */
+    @Select("SELECT id, username FROM user WHERE deleted = 0")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(User.class)
+    void scanUsernames(ResultHandler<User> handler);
+    
+    /**
+     * 流式读取符合条件的用户（不含密码），用于导出
+     * 使用只进结果集逐行回调，内存占用与导出行数无关
+     * @param wrapper 查询条件
+     * @param handler 逐行处理回调
+     */
+    @Select("SELECT id, username, nickname, email, phone, gender, status, create_time, update_time, deleted "
+            + "FROM user ${ew.customSqlSegment}")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(User.class)
+    void streamUsers(@Param(Constants.WRAPPER) Wrapper<User> wrapper, ResultHandler<User> handler);
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.example.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 密码哈希Service接口
+ * BCrypt计算在专用线程池中执行，线程池繁忙时抛出RejectedExecutionException；
+ * 返回的Future在后续处理线程池中完成，调用方的后续阶段（访问Redis、数据库等）不占用哈希线程
+ */
+public interface PasswordHashService {
+    
+    /**
+     * 异步校验密码
+     * @param rawPassword 明文密码
+     * @param encodedPassword 已加密的密码
+     * @return 密码是否匹配
+     */
+    CompletableFuture<Boolean> matches(String rawPassword, String encodedPassword);
+    
+    /**
+     * 异步加密密码
+     * @param rawPassword 明文密码
+     * @return 加密后的密码
+     */
+    CompletableFuture<String> encode(String rawPassword);
+}
@@ -1,13 +1,43 @@
 package com.example.service;
 
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.function.Supplier;
+
 public interface RefreshTokenService {
     
     String createRefreshToken(Long userId, String username);
     
-    String findByUserId(Long userId);
-    
     void deleteByUserId(Long userId);
     
-    boolean validateToken(Long userId, String token);
+    /**
+     * 轮换刷新令牌：先确认当前令牌有效再签发新令牌，写入时在Redis脚本中再次比较并原子替换
+     * 同一旧令牌的并发刷新只执行一次：本节点内合并为一次调用，其他节点在宽限期内直接取回已签发的结果；
+     * 令牌被删除（退出登录、强制下线）后宽限结果随之失效
+     * @param userId 用户ID
+     * @param username 用户名
+     * @param oldToken 客户端提交的刷新令牌
+     * @param accessTokenFactory 新Access Token的生成函数，只在旧令牌校验通过后调用；
+     *                           校验后与其他节点竞争失败时生成的令牌被丢弃，不会返回给调用方
+     * @return 新的令牌；旧令牌不存在、已过期或已被轮换（且超过宽限期）时返回null
+     */
+    RotationResult rotateToken(Long userId, String username, String oldToken, Supplier<String> accessTokenFactory);
+    
+    /**
+     * 令牌轮换结果
+     */
+    @Getter
+    @AllArgsConstructor
+    class RotationResult {
+        /**
+         * 新的刷新令牌
+         */
+        private final String refreshToken;
+        
+        /**
+         * 新的Access Token
+         */
+        private final String accessToken;
+    }
 }
-
@@ -0,0 +1,63 @@
+package com.example.service;
+
+import com.example.entity.User;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 用户缓存Service接口
+ * 本地缓存（L1）+ Redis缓存（L2）两级缓存
+ */
+public interface UserCacheService {
+    
+    /**
+     * 根据用户名获取用户，依次查询本地缓存、Redis缓存，均未命中时调用loader加载并回填缓存
+     * @param username 用户名
+     * @param loader 缓存未命中时的加载函数，返回null表示用户不存在
+     * @return 用户信息
+     */
+    User getByUsername(String username, Function<String, User> loader);
+    
+    /**
+     * 根据ID获取用户，ID缓存只保存用户名，用户数据与用户名缓存共享
+     * @param id 用户ID
+     * @param loader 缓存未命中时的加载函数
+     * @return 用户信息
+     */
+    User getById(Long id, Function<Long, User> loader);
+    
+    /**
+     * 批量根据ID获取用户：先查本地缓存，再用MGET批量查Redis，剩余ID通过一次loader调用加载
+     * @param ids 用户ID列表
+     * @param loader 批量加载函数（一次 IN 查询）
+     * @return 存在的用户，按请求顺序排列
+     */
+    List<User> getByIds(Collection<Long> ids, Function<Collection<Long>, List<User>> loader);
+    
+    /**
+     * 批量根据用户名获取用户：先查本地缓存，再用MGET批量查Redis，剩余用户名通过一次loader调用加载
+     * @param usernames 用户名列表
+     * @param loader 批量加载函数（一次 IN 查询）
+     * @return 存在的用户，按请求顺序排列
+     */
+    List<User> getByUsernames(Collection<String> usernames, Function<Collection<String>, List<User>> loader);
+    
+    /**
+     * 清除用户缓存（用户名、ID和分页总数），并通知其他节点清除本地缓存
+     * 在事务中调用时，同一事务内的失效请求合并，提交后以一次管道请求（DEL + PUBLISH）发送；回滚时丢弃
+     * @param usernames 用户名列表
+     * @param ids 用户ID列表
+     */
+    void invalidate(Collection<String> usernames, Collection<Long> ids);
+    
+    /**
+     * 获取分页总数，优先从缓存获取，未命中或用户数据已变更时调用加载函数并缓存结果
+     * @param filterKey 查询条件标识
+     * @param loader 加载函数（查询数据库）
+     * @return 总数
+     */
+    long getCount(String filterKey, Supplier<Long> loader);
+}
@@ -0,0 +1,68 @@
+package com.example.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * 用户批量导入Service接口
+ * 逐行流式读取CSV或NDJSON，按批次并行加密密码并批量写入数据库
+ */
+public interface UserImportService {
+    
+    /**
+     * 导入用户
+     * CSV首行为表头，支持列：username、password、nickname、email、phone、gender、status；
+     * NDJSON每行一个用户JSON对象，字段同上
+     * @param reader 请求体
+     * @param format 文件格式：csv 或 ndjson
+     * @param listener 导入进度和逐行错误的回调
+     * @return 导入结果汇总
+     * @throws IOException 读取请求体失败
+     */
+    ImportResult importUsers(BufferedReader reader, String format, ImportListener listener) throws IOException;
+    
+    /**
+     * 导入进度回调
+     */
+    interface ImportListener {
+        
+        /**
+         * 某一行导入失败
+         * @param line 行号（从1开始，含表头）
+         * @param username 用户名（无法解析时为null）
+         * @param message 失败原因
+         */
+        void onError(long line, String username, String message);
+        
+        /**
+         * 一个批次处理完成
+         * @param result 截至当前的导入结果
+         */
+        void onProgress(ImportResult result);
+    }
+    
+    /**
+     * 导入结果
+     */
+    @Getter
+    @AllArgsConstructor
+    class ImportResult {
+        /**
+         * 已处理行数
+         */
+        private final long processed;
+        
+        /**
+         * 导入成功行数
+         */
+        private final long imported;
+        
+        /**
+         * 导入失败行数
+         */
+        private final long failed;
+    }
+}
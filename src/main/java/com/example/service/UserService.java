@@ -3,6 +3,12 @@ package com.example.service;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.example.entity.User;
+import com.example.util.CursorPageVO;
+import com.example.util.PageVO;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 用户Service接口
@@ -16,6 +22,27 @@ public interface UserService extends IService<User> {
      */
     User findByUsername(String username);
     
+    /**
+     * 查询用户的密码哈希（缓存中的用户不含密码，登录校验时单独查询）
+     * @param id 用户ID
+     * @return 密码哈希
+     */
+    String getPasswordHash(Long id);
+    
+    /**
+     * 根据ID批量查询用户，优先从缓存获取，未命中的ID通过一次 IN 查询加载
+     * @param ids 用户ID列表
+     * @return 存在的用户，按请求顺序排列
+     */
+    List<User> getByIds(Collection<Long> ids);
+    
+    /**
+     * 根据用户名批量查询用户，优先从缓存获取，未命中的用户名通过一次 IN 查询加载
+     * @param usernames 用户名列表
+     * @return 存在的用户，按请求顺序排列
+     */
+    List<User> getByUsernames(Collection<String> usernames);
+    
     /**
      * 分页查询用户列表
      * @param pageNum 页码
@@ -24,4 +51,67 @@ public interface UserService extends IService<User> {
      * @return 分页结果
      */
     Page<User> pageUser(Integer pageNum, Integer pageSize, String username);
+    
+    /**
+     * 分页查询用户列表，可指定总数统计方式
+     * @param pageNum 页码
+     * @param pageSize 每页条数
+     * @param username 用户名（模糊查询）
+     * @param totalMode 总数统计方式
+     * @return 分页结果
+     */
+    PageVO<User> pageUser(Integer pageNum, Integer pageSize, String username, TotalMode totalMode);
+    
+    /**
+     * 游标分页查询用户列表（按创建时间、ID倒序），任意页的查询代价与第一页相同
+     * @param cursor 上一页返回的游标，查询第一页时为空
+     * @param pageSize 每页条数
+     * @param username 用户名（模糊查询）
+     * @return 游标分页结果
+     */
+    CursorPageVO<User> pageUserByCursor(String cursor, Integer pageSize, String username);
+    
+    /**
+     * 流式遍历符合分页查询条件的所有用户（不含密码），按ID升序逐个回调，不在内存中构建列表
+     * @param username 用户名（模糊查询，可选）
+     * @param consumer 逐行处理回调
+     */
+    void streamUsers(String username, Consumer<User> consumer);
+    
+    /**
+     * 分页总数统计方式
+     */
+    enum TotalMode {
+        /**
+         * 精确统计，每次执行COUNT查询
+         */
+        EXACT,
+        /**
+         * 按查询条件缓存COUNT结果，短时间过期，用户写入时清除
+         */
+        CACHED,
+        /**
+         * 根据表统计信息估算（仅无查询条件时，有条件时退化为CACHED）
+         */
+        ESTIMATED,
+        /**
+         * 不统计总数，只返回是否有下一页
+         */
+        NONE;
+        
+        /**
+         * 解析统计方式，为空或无法识别时使用EXACT
+         */
+        public static TotalMode of(String value) {
+            if (value == null) {
+                return EXACT;
+            }
+            for (TotalMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value)) {
+                    return mode;
+                }
+            }
+            return EXACT;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package com.example.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户名子串检索索引Service接口
+ * 进程内三元组（trigram）倒排索引，替代无法使用B-tree索引的 LIKE '%x%' 查询
+ */
+public interface UsernameIndexService {
+    
+    /**
+     * 查询用户名包含关键字（不区分大小写）的用户ID
+     * @param keyword 关键字
+     * @return 匹配的用户ID（升序）；索引未就绪或匹配数超过上限时返回null，调用方应回退到数据库模糊查询
+     */
+    List<Long> search(String keyword);
+    
+    /**
+     * 新增或更新用户名，并通知其他节点
+     * @param id 用户ID
+     * @param username 用户名
+     */
+    void upsert(Long id, String username);
+    
+    /**
+     * 批量新增或更新用户名，通知以管道方式一次性发送
+     * @param usernames 用户ID -> 用户名
+     */
+    void upsertAll(Map<Long, String> usernames);
+    
+    /**
+     * 移除用户，并通知其他节点
+     * @param id 用户ID
+     */
+    void remove(Long id);
+    
+    /**
+     * 批量移除用户，通知以管道方式一次性发送
+     * @param ids 用户ID列表
+     */
+    void removeAll(Collection<Long> ids);
+}
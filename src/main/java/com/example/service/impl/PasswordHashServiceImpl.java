@@ -0,0 +1,103 @@
+package com.example.service.impl;
+
+import com.example.service.PasswordHashService;
+import com.example.util.LogRateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * 密码哈希Service实现类
+ */
+@Slf4j
+@Service
+public class PasswordHashServiceImpl implements PasswordHashService {
+    
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+    
+    @Autowired
+    @Qualifier("passwordHashExecutor")
+    private ThreadPoolTaskExecutor passwordHashExecutor;
+    
+    @Autowired
+    @Qualifier("passwordHashCallbackExecutor")
+    private ThreadPoolTaskExecutor passwordHashCallbackExecutor;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private LogRateLimiter logRateLimiter;
+    
+    private Timer matchesTimer;
+    
+    private Timer encodeTimer;
+    
+    private Counter rejectedCounter;
+    
+    @PostConstruct
+    public void init() {
+        matchesTimer = Timer.builder("password.hash.duration")
+                .tag("operation", "matches")
+                .register(meterRegistry);
+        encodeTimer = Timer.builder("password.hash.duration")
+                .tag("operation", "encode")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("password.hash.rejected")
+                .register(meterRegistry);
+        Gauge.builder("password.hash.queue.depth", passwordHashExecutor,
+                        executor -> executor.getThreadPoolExecutor().getQueue().size())
+                .register(meterRegistry);
+        Gauge.builder("password.hash.active", passwordHashExecutor, ThreadPoolTaskExecutor::getActiveCount)
+                .register(meterRegistry);
+    }
+    
+    @Override
+    public CompletableFuture<Boolean> matches(String rawPassword, String encodedPassword) {
+        return submit(matchesTimer, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+    
+    @Override
+    public CompletableFuture<String> encode(String rawPassword) {
+        return submit(encodeTimer, () -> passwordEncoder.encode(rawPassword));
+    }
+    
+    private <T> CompletableFuture<T> submit(Timer timer, Supplier<T> task) {
+        CompletableFuture<T> hash;
+        try {
+            hash = CompletableFuture.supplyAsync(() -> timer.record(task), passwordHashExecutor);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            long suppressed = logRateLimiter.tryAcquire("password.hash.rejected");
+            if (suppressed >= 0) {
+                log.warn("密码哈希线程池已满，拒绝请求（已省略{}条）", suppressed);
+            }
+            throw e;
+        }
+        
+        // 在后续处理线程池中完成返回的Future（成功和异常都切换线程），
+        // 调用方的thenApply/exceptionally不会在BCrypt线程上执行阻塞I/O
+        CompletableFuture<T> result = new CompletableFuture<>();
+        hash.whenCompleteAsync((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(value);
+            }
+        }, passwordHashCallbackExecutor);
+        return result;
+    }
+}
@@ -2,13 +2,41 @@ package com.example.service.impl;
 
 import com.example.service.RefreshTokenService;
 import com.example.util.JwtUtil;
+import com.example.util.RedisCommandMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
+/**
+ * 刷新令牌Service实现类
+ * Redis中只保存令牌的SHA-256摘要（32字节），不保存完整的JWT
+ */
 @Slf4j
 @Service
 public class RefreshTokenServiceImpl implements RefreshTokenService {
@@ -19,44 +47,248 @@ public class RefreshTokenServiceImpl implements RefreshTokenService {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
     
+    @Autowired
+    private RedisCommandMetrics redisCommandMetrics;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private Counter coalescedRotations;
+    
+    private Counter graceRotations;
+    
+    @PostConstruct
+    public void init() {
+        coalescedRotations = Counter.builder("refresh.rotation.shared")
+                .tag("source", "coalesced")
+                .register(meterRegistry);
+        graceRotations = Counter.builder("refresh.rotation.shared")
+                .tag("source", "grace")
+                .register(meterRegistry);
+    }
+    
     private static final String REFRESH_TOKEN_PREFIX = "refresh_token:";
     
+    /**
+     * Redis命令耗时指标中的组件名
+     */
+    private static final String METRICS_COMPONENT = "refresh_token";
+    
+    /**
+     * 轮换宽限结果前缀，key为旧令牌摘要，值为 新令牌摘要（32字节）+ 轮换时签发的令牌（以旧令牌派生的密钥加密）；
+     * 只有当前保存的令牌仍是该新令牌时宽限结果才有效，令牌被删除（退出登录、强制下线）、重新登录或再次轮换后立即作废
+     */
+    private static final String REFRESH_GRACE_PREFIX = "refresh_grace:";
+    
+    /**
+     * 刷新令牌校验/轮换脚本，先以校验模式确认令牌有效后再签发新令牌，再以轮换模式比较并替换
+     * KEYS[1] 刷新令牌key，KEYS[2] 旧令牌的宽限结果key
+     * ARGV[1] 旧令牌摘要，ARGV[2]、ARGV[3] 旧令牌按旧版本格式（完整JWT，JSON或紧凑序列化）保存时的值，
+     * ARGV[4] 模式：0 只校验，1 轮换；轮换模式下 ARGV[5] 新令牌摘要，ARGV[6] 过期时间（毫秒），
+     * ARGV[7] 本次签发的令牌（加密后的宽限结果），ARGV[8] 宽限期（毫秒）
+     * 返回 {1} 令牌有效（轮换模式下已替换），{2, 宽限结果} 旧令牌刚被轮换过，{0} 令牌不存在，{-1} 令牌不匹配
+     */
+    private static final DefaultRedisScript<List> ROTATE_SCRIPT = new DefaultRedisScript<>("""
+            local stored = redis.call('GET', KEYS[1])
+            if stored and (stored == ARGV[1] or stored == ARGV[2] or stored == ARGV[3]) then
+              if ARGV[4] == '1' then
+                redis.call('SET', KEYS[1], ARGV[5], 'PX', ARGV[6])
+                if tonumber(ARGV[8]) > 0 then
+                  redis.call('SET', KEYS[2], ARGV[5] .. ARGV[7], 'PX', ARGV[8])
+                end
+              end
+              return {1}
+            end
+            local grace = redis.call('GET', KEYS[2])
+            if grace and stored and string.sub(grace, 1, 32) == stored then
+              return {2, string.sub(grace, 33)}
+            end
+            if not stored then
+              return {0}
+            end
+            return {-1}
+            """, List.class);
+    
+    /**
+     * 宽限结果中刷新令牌与Access Token的分隔符（JWT中不会出现）
+     */
+    private static final String GRACE_SEPARATOR = "\n";
+    
+    /**
+     * 宽限结果加密密钥的派生前缀，与摘要（Redis key）的输入不同，由key无法推出密钥
+     */
+    private static final String GRACE_KEY_CONTEXT = "refresh_grace_key:";
+    
+    private static final int GCM_IV_LENGTH = 12;
+    
+    private static final int GCM_TAG_BITS = 128;
+    
+    private final SecureRandom secureRandom = new SecureRandom();
+    
+    /**
+     * 旧令牌被轮换后的宽限期，期间使用同一旧令牌的刷新请求直接取回已签发的结果
+     */
+    @Value("${jwt.refresh-grace-period:10s}")
+    private Duration gracePeriod;
+    
+    /**
+     * 本节点进行中的轮换：旧令牌摘要 -> 轮换结果
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<RotationResult>> inFlightRotations = new ConcurrentHashMap<>();
+    
     @Override
     public String createRefreshToken(Long userId, String username) {
         String token = jwtUtil.generateRefreshToken(username);
         long expireTime = jwtUtil.getRefreshExpire();
         
-        String key = REFRESH_TOKEN_PREFIX + userId;
-        
-        redisTemplate.opsForValue().set(key, token, expireTime, TimeUnit.MILLISECONDS);
+        byte[] key = (REFRESH_TOKEN_PREFIX + userId).getBytes(StandardCharsets.UTF_8);
+        byte[] digest = digest(token);
+        redisCommandMetrics.record(METRICS_COMPONENT, "set", () -> redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.stringCommands().set(key, digest, Expiration.milliseconds(expireTime),
+                        RedisStringCommands.SetOption.upsert())));
         
-        log.info("创建刷新令牌成功，用户: {}", username);
+        log.debug("创建刷新令牌成功，用户: {}", username);
         
         return token;
     }
     
     @Override
-    public String findByUserId(Long userId) {
+    public void deleteByUserId(Long userId) {
         String key = REFRESH_TOKEN_PREFIX + userId;
-        return (String) redisTemplate.opsForValue().get(key);
+        redisCommandMetrics.record(METRICS_COMPONENT, "del", () -> redisTemplate.delete(key));
+        log.debug("删除用户的刷新令牌，用户ID: {}", userId);
     }
     
     @Override
-    public void deleteByUserId(Long userId) {
-        String key = REFRESH_TOKEN_PREFIX + userId;
-        redisTemplate.delete(key);
-        log.info("删除用户的刷新令牌，用户ID: {}", userId);
+    @SuppressWarnings("unchecked")
+    public RotationResult rotateToken(Long userId, String username, String oldToken,
+                                      Supplier<String> accessTokenFactory) {
+        byte[] oldDigest = digest(oldToken);
+        String flightKey = HexFormat.of().formatHex(oldDigest);
+        
+        // 本节点内同一旧令牌的并发刷新等待第一个请求的结果
+        CompletableFuture<RotationResult> future = new CompletableFuture<>();
+        CompletableFuture<RotationResult> inFlight = inFlightRotations.putIfAbsent(flightKey, future);
+        if (inFlight != null) {
+            coalescedRotations.increment();
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        
+        try {
+            RotationResult result = executeRotation(userId, username, oldToken, oldDigest, flightKey, accessTokenFactory);
+            future.complete(result);
+            return result;
+        } catch (Throwable e) {
+            // Error同样要通知等待方，否则它们会永远阻塞在join上
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightRotations.remove(flightKey, future);
+        }
     }
     
-    @Override
-    public boolean validateToken(Long userId, String token) {
-        String key = REFRESH_TOKEN_PREFIX + userId;
-        String storedToken = (String) redisTemplate.opsForValue().get(key);
+    @SuppressWarnings("unchecked")
+    private RotationResult executeRotation(Long userId, String username, String oldToken, byte[] oldDigest,
+                                           String flightKey, Supplier<String> accessTokenFactory) {
+        // 兼容升级前保存的完整令牌：JSON字符串和当前值序列化器的编码
+        byte[] legacyJson = ("\"" + oldToken + "\"").getBytes(StandardCharsets.UTF_8);
+        byte[] legacyValue = ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(oldToken);
+        List<String> keys = List.of(REFRESH_TOKEN_PREFIX + userId, REFRESH_GRACE_PREFIX + flightKey);
         
-        if (storedToken == null) {
-            return false;
+        // 先确认旧令牌有效再签发，无效令牌和宽限期内的重复请求都不会触发签名
+        List<Object> result = redisCommandMetrics.record(METRICS_COMPONENT, "check", () -> redisTemplate.execute(ROTATE_SCRIPT,
+                RedisSerializer.byteArray(), null, keys,
+                oldDigest, legacyJson, legacyValue, "0".getBytes(StandardCharsets.UTF_8)));
+        if (result != null && !result.isEmpty() && ((Number) result.get(0)).longValue() == 1) {
+            String newRefreshToken = jwtUtil.generateRefreshToken(username);
+            String newAccessToken = accessTokenFactory.get();
+            result = redisCommandMetrics.record(METRICS_COMPONENT, "rotate", () -> redisTemplate.execute(ROTATE_SCRIPT,
+                    RedisSerializer.byteArray(), null, keys,
+                    oldDigest, legacyJson, legacyValue, "1".getBytes(StandardCharsets.UTF_8),
+                    digest(newRefreshToken),
+                    String.valueOf(jwtUtil.getRefreshExpire()).getBytes(StandardCharsets.UTF_8),
+                    encryptGrace(oldToken, newRefreshToken + GRACE_SEPARATOR + newAccessToken),
+                    String.valueOf(gracePeriod.toMillis()).getBytes(StandardCharsets.UTF_8)));
+            if (result != null && !result.isEmpty() && ((Number) result.get(0)).longValue() == 1) {
+                return new RotationResult(newRefreshToken, newAccessToken);
+            }
+            // 校验后被其他节点抢先轮换或令牌已被删除：本次签发的令牌未保存也未返回，直接丢弃
         }
         
-        return storedToken.equals(token);
+        if (result == null || result.isEmpty()) {
+            return null;
+        }
+        long status = ((Number) result.get(0)).longValue();
+        if (status == 2 && result.size() > 1 && result.get(1) instanceof byte[] grace) {
+            // 旧令牌刚被其他请求轮换，返回当时签发的令牌
+            String plain = decryptGrace(oldToken, grace);
+            String[] tokens = plain != null ? plain.split(GRACE_SEPARATOR, 2) : new String[0];
+            if (tokens.length == 2) {
+                graceRotations.increment();
+                return new RotationResult(tokens[0], tokens[1]);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 加密宽限结果：AES-256-GCM，密钥由旧令牌派生，Redis中不保存可直接使用的令牌；
+     * 只有持有旧令牌的请求才能解密
+     * @return IV + 密文
+     */
+    private byte[] encryptGrace(String oldToken, String plain) {
+        try {
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            secureRandom.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, graceKey(oldToken), new GCMParameterSpec(GCM_TAG_BITS, iv));
+            byte[] encrypted = cipher.doFinal(plain.getBytes(StandardCharsets.UTF_8));
+            byte[] result = new byte[iv.length + encrypted.length];
+            System.arraycopy(iv, 0, result, 0, iv.length);
+            System.arraycopy(encrypted, 0, result, iv.length, encrypted.length);
+            return result;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("宽限结果加密失败", e);
+        }
+    }
+    
+    /**
+     * 解密宽限结果，数据损坏或密钥不匹配时返回null
+     */
+    private String decryptGrace(String oldToken, byte[] data) {
+        if (data.length <= GCM_IV_LENGTH) {
+            return null;
+        }
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, graceKey(oldToken), new GCMParameterSpec(GCM_TAG_BITS, data, 0, GCM_IV_LENGTH));
+            byte[] plain = cipher.doFinal(data, GCM_IV_LENGTH, data.length - GCM_IV_LENGTH);
+            return new String(plain, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            log.warn("宽限结果解密失败: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    private SecretKeySpec graceKey(String oldToken) {
+        return new SecretKeySpec(digest(GRACE_KEY_CONTEXT + oldToken), "AES");
+    }
+    
+    /**
+     * 计算令牌的SHA-256摘要
+     */
+    private byte[] digest(String token) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
     }
 }
@@ -0,0 +1,702 @@
+package com.example.service.impl;
+
+import com.example.entity.User;
+import com.example.service.UserCacheService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 用户缓存Service实现类
+ * L1为进程内Caffeine缓存（W-TinyLFU淘汰），L2为Redis缓存；
+ * 用户写入时通过Redis发布/订阅通知所有节点清除L1；
+ * 缓存中的用户不含密码，需要密码哈希时由调用方单独查询
+ */
+@Slf4j
+@Service
+public class UserCacheServiceImpl implements UserCacheService, MessageListener {
+    
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+    
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    /**
+     * Redis缓存前缀
+     */
+    private static final String USER_CACHE_PREFIX = "user:";
+    
+    /**
+     * 缓存失效通知频道
+     */
+    private static final String USER_CACHE_CHANNEL = "user:cache:invalidate";
+    
+    /**
+     * 分页总数缓存key前缀，每个查询条件一个key（条件取摘要，长度固定），value为"总数:失效计数"，各自过期
+     */
+    private static final String USER_COUNT_PREFIX = USER_CACHE_PREFIX + "count:";
+    
+    /**
+     * 批量清除缓存时单条DEL命令的最大键数
+     */
+    private static final int INVALIDATE_DEL_BATCH_SIZE = 500;
+    
+    /**
+     * Redis中"用户不存在"的标记值
+     */
+    private static final String NOT_FOUND_MARKER = "__USER_NOT_FOUND__";
+    
+    /**
+     * 缓存失效计数，每次清除缓存时加一；写入"不存在"标记前比较加载前读到的值，
+     * 加载期间发生过失效（如新用户刚提交）时不写入标记
+     */
+    private static final String INVALIDATION_EPOCH_KEY = USER_CACHE_PREFIX + "invalidation:epoch";
+    
+    /**
+     * 写入"不存在"标记脚本
+     * KEYS[1] 失效计数，KEYS[2..n] 用户名缓存key
+     * ARGV[1] 加载前读到的失效计数，ARGV[2] 标记值，ARGV[3] 过期时间（毫秒）
+     * 加载期间发生过失效时不写入，返回空列表；否则逐个 SET NX，返回每个key是否写入（1/0）
+     */
+    private static final DefaultRedisScript<List> CACHE_NOT_FOUND_SCRIPT = new DefaultRedisScript<>("""
+            if (redis.call('GET', KEYS[1]) or '0') ~= ARGV[1] then
+              return {}
+            end
+            local written = {}
+            for i = 2, #KEYS do
+              written[i - 1] = redis.call('SET', KEYS[i], ARGV[2], 'PX', ARGV[3], 'NX') and 1 or 0
+            end
+            return written
+            """, List.class);
+    
+    /**
+     * 本地缓存中"用户不存在"的标记对象（按引用比较）
+     */
+    private static final User NOT_FOUND = new User();
+    
+    /**
+     * Redis缓存基础过期时间（30分钟），实际过期时间再加上随机抖动
+     */
+    private static final long CACHE_EXPIRE_TIME = 30;
+    
+    /**
+     * 本地缓存最大条目数（每个用户约1KB，默认约占10MB堆内存）
+     */
+    @Value("${app.user-cache.local-max-size:10000}")
+    private long localMaxSize;
+    
+    /**
+     * 本地缓存过期时间，作为丢失失效通知时的兜底
+     */
+    @Value("${app.user-cache.local-ttl:5m}")
+    private Duration localTtl;
+    
+    /**
+     * Redis缓存过期时间的随机抖动上限
+     */
+    @Value("${app.user-cache.ttl-jitter:5m}")
+    private Duration ttlJitter;
+    
+    /**
+     * 提前刷新窗口：剩余过期时间接近该值时开始按概率提前刷新
+     */
+    @Value("${app.user-cache.early-refresh-window:60s}")
+    private Duration earlyRefreshWindow;
+    
+    /**
+     * "用户不存在"标记的缓存时间
+     */
+    @Value("${app.user-cache.negative-ttl:60s}")
+    private Duration negativeTtl;
+    
+    /**
+     * 分页总数缓存有效期
+     */
+    @Value("${app.user-page.count-cache-ttl:30s}")
+    private Duration countCacheTtl;
+    
+    private Cache<String, User> localCache;
+    
+    /**
+     * 本地ID索引：用户ID -> 用户名，用户数据只在localCache中保存一份
+     */
+    private Cache<Long, String> localIdIndex;
+    
+    private final AtomicLong redisHits = new AtomicLong();
+    
+    private final AtomicLong redisMisses = new AtomicLong();
+    
+    /**
+     * 正在进行的数据库加载：用户名 -> 加载结果
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<User>> inFlightLoads = new ConcurrentHashMap<>();
+    
+    private Counter coalescedLoads;
+    
+    private Counter earlyRefreshes;
+    
+    private Counter negativeHits;
+    
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfter(new Expiry<String, User>() {
+                    @Override
+                    public long expireAfterCreate(String key, User value, long currentTime) {
+                        // "不存在"标记使用较短的过期时间
+                        return (value == NOT_FOUND ? negativeTtl : localTtl).toNanos();
+                    }
+                    
+                    @Override
+                    public long expireAfterUpdate(String key, User value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+                    
+                    @Override
+                    public long expireAfterRead(String key, User value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        
+        localIdIndex = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(localTtl)
+                .build();
+        
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(USER_CACHE_CHANNEL));
+        
+        // L1命中率通过 cache.gets{cache=user.local} 暴露，L2命中率通过 user.cache.redis 暴露
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, "user.local");
+        FunctionCounter.builder("user.cache.redis", redisHits, AtomicLong::get)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("user.cache.redis", redisMisses, AtomicLong::get)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        coalescedLoads = Counter.builder("user.cache.load")
+                .tag("type", "coalesced")
+                .register(meterRegistry);
+        earlyRefreshes = Counter.builder("user.cache.load")
+                .tag("type", "early_refresh")
+                .register(meterRegistry);
+        negativeHits = Counter.builder("user.cache.negative.hits")
+                .register(meterRegistry);
+        Gauge.builder("user.cache.hit.ratio", localCache, cache -> cache.stats().hitRate())
+                .tag("level", "l1")
+                .register(meterRegistry);
+        Gauge.builder("user.cache.hit.ratio", this, service -> service.redisHitRatio())
+                .tag("level", "l2")
+                .register(meterRegistry);
+    }
+    
+    @Override
+    public User getByUsername(String username, Function<String, User> loader) {
+        // 1. 查询本地缓存
+        User user = localCache.getIfPresent(username);
+        if (user == NOT_FOUND) {
+            negativeHits.increment();
+            return null;
+        }
+        if (user != null) {
+            return user;
+        }
+        
+        // 2. 查询Redis缓存，同时取回剩余过期时间（一次往返）
+        String cacheKey = buildKey(username);
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.opsForValue().get(cacheKey);
+                operations.getExpire(cacheKey, TimeUnit.MILLISECONDS);
+                return null;
+            }
+        });
+        Object cached = results.get(0);
+        if (NOT_FOUND_MARKER.equals(cached)) {
+            // 用户不存在的标记，无需查询数据库
+            redisHits.incrementAndGet();
+            negativeHits.increment();
+            localCache.put(username, NOT_FOUND);
+            return null;
+        }
+        user = (User) cached;
+        
+        if (user == null) {
+            redisMisses.incrementAndGet();
+            
+            // 3. 缓存不存在，从数据库查询（同一用户名的并发请求只查询一次）
+            user = loadSingleFlight(username, loader, true);
+        } else {
+            redisHits.incrementAndGet();
+            log.debug("从缓存中获取用户信息: {}", username);
+            
+            // 临近过期时按概率提前刷新，只有抢到加载权的请求会查询数据库，其他请求继续使用缓存值
+            Long ttlMillis = (Long) results.get(1);
+            if (shouldRefreshEarly(ttlMillis)) {
+                earlyRefreshes.increment();
+                User refreshed = loadSingleFlight(username, loader, false);
+                if (refreshed != null) {
+                    user = refreshed;
+                }
+            }
+        }
+        
+        // "不存在"的结果由加载方在成功写入Redis标记后放入本地缓存
+        if (user != null) {
+            localCache.put(username, user);
+            localIdIndex.put(user.getId(), username);
+        }
+        return user;
+    }
+    
+    /**
+     * 单飞加载：同一用户名同时只有一个请求查询数据库，其他请求等待其结果
+     * @param username 用户名
+     * @param loader 加载函数
+     * @param waitForInFlight 已有加载进行中时是否等待其结果；为false时直接返回null
+     * @return 加载到的用户
+     */
+    private User loadSingleFlight(String username, Function<String, User> loader, boolean waitForInFlight) {
+        CompletableFuture<User> future = new CompletableFuture<>();
+        CompletableFuture<User> inFlight = inFlightLoads.putIfAbsent(username, future);
+        if (inFlight != null) {
+            if (!waitForInFlight) {
+                return null;
+            }
+            coalescedLoads.increment();
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        
+        try {
+            // 查询数据库前读取失效计数
+            String epoch = currentInvalidationEpoch();
+            User user = toCached(loader.apply(username));
+            if (user != null) {
+                putUsers(List.of(user));
+                log.debug("用户信息已存入缓存: {}", username);
+            } else {
+                // 用户不存在，短时间缓存"不存在"标记，新增用户时立即清除
+                cacheNotFound(List.of(username), epoch);
+            }
+            future.complete(user);
+            return user;
+        } catch (Throwable e) {
+            // Error同样要通知等待方，否则它们会永远阻塞在join上
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(username, future);
+        }
+    }
+    
+    @Override
+    public User getById(Long id, Function<Long, User> loader) {
+        List<User> users = getByIds(List.of(id), ids -> {
+            User user = loader.apply(id);
+            return user != null ? List.of(user) : List.of();
+        });
+        return users.isEmpty() ? null : users.get(0);
+    }
+    
+    @Override
+    public List<User> getByIds(Collection<Long> ids, Function<Collection<Long>, List<User>> loader) {
+        Map<Long, User> found = new HashMap<>();
+        
+        // 1. 查询本地缓存（ID -> 用户名 -> 用户）
+        List<Long> missing = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            String username = localIdIndex.getIfPresent(id);
+            User user = username != null ? localCache.getIfPresent(username) : null;
+            if (user != null && user != NOT_FOUND && id.equals(user.getId())) {
+                found.put(id, user);
+            } else {
+                missing.add(id);
+            }
+        }
+        
+        // 2. 批量查询Redis：MGET ID索引得到用户名，再MGET用户名缓存得到用户
+        if (!missing.isEmpty()) {
+            List<Object> usernames = redisTemplate.opsForValue().multiGet(
+                    missing.stream().map(this::buildIdKey).toList());
+            List<Long> indexedIds = new ArrayList<>();
+            List<String> usernameKeys = new ArrayList<>();
+            for (int i = 0; i < missing.size(); i++) {
+                Object username = usernames != null ? usernames.get(i) : null;
+                if (username instanceof String name) {
+                    indexedIds.add(missing.get(i));
+                    usernameKeys.add(buildKey(name));
+                }
+            }
+            if (!usernameKeys.isEmpty()) {
+                List<Object> cachedUsers = redisTemplate.opsForValue().multiGet(usernameKeys);
+                for (int i = 0; i < indexedIds.size(); i++) {
+                    Object cached = cachedUsers != null ? cachedUsers.get(i) : null;
+                    // 用户名可能已被修改，ID不一致时视为未命中
+                    if (cached instanceof User user && indexedIds.get(i).equals(user.getId())) {
+                        found.put(user.getId(), user);
+                        localCache.put(user.getUsername(), user);
+                        localIdIndex.put(user.getId(), user.getUsername());
+                        redisHits.incrementAndGet();
+                    }
+                }
+            }
+            missing.removeIf(found::containsKey);
+        }
+        
+        // 3. 剩余ID通过一次 IN 查询从数据库加载，并回填缓存
+        if (!missing.isEmpty()) {
+            redisMisses.addAndGet(missing.size());
+            List<User> loaded = loader.apply(missing).stream().map(this::toCached).toList();
+            if (!loaded.isEmpty()) {
+                putUsers(loaded);
+                for (User user : loaded) {
+                    found.put(user.getId(), user);
+                    localCache.put(user.getUsername(), user);
+                    localIdIndex.put(user.getId(), user.getUsername());
+                }
+            }
+        }
+        
+        // 按请求顺序返回，跳过不存在的ID
+        List<User> result = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            User user = found.get(id);
+            if (user != null) {
+                result.add(user);
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public List<User> getByUsernames(Collection<String> usernames, Function<Collection<String>, List<User>> loader) {
+        Map<String, User> found = new HashMap<>();
+        
+        // 1. 查询本地缓存，已知不存在的用户名直接跳过
+        List<String> missing = new ArrayList<>();
+        for (String username : new LinkedHashSet<>(usernames)) {
+            User user = localCache.getIfPresent(username);
+            if (user == NOT_FOUND) {
+                negativeHits.increment();
+            } else if (user != null) {
+                found.put(username, user);
+            } else {
+                missing.add(username);
+            }
+        }
+        
+        // 2. MGET批量查询Redis缓存
+        if (!missing.isEmpty()) {
+            List<Object> cachedUsers = redisTemplate.opsForValue().multiGet(
+                    missing.stream().map(this::buildKey).toList());
+            List<String> notCached = new ArrayList<>();
+            for (int i = 0; i < missing.size(); i++) {
+                String username = missing.get(i);
+                Object cached = cachedUsers != null ? cachedUsers.get(i) : null;
+                if (NOT_FOUND_MARKER.equals(cached)) {
+                    redisHits.incrementAndGet();
+                    negativeHits.increment();
+                    localCache.put(username, NOT_FOUND);
+                } else if (cached instanceof User user) {
+                    redisHits.incrementAndGet();
+                    found.put(username, user);
+                    localCache.put(username, user);
+                    localIdIndex.put(user.getId(), username);
+                } else {
+                    notCached.add(username);
+                }
+            }
+            missing = notCached;
+        }
+        
+        // 3. 剩余用户名通过一次 IN 查询从数据库加载，不存在的用户名写入"不存在"标记
+        if (!missing.isEmpty()) {
+            redisMisses.addAndGet(missing.size());
+            String epoch = currentInvalidationEpoch();
+            List<User> loaded = loader.apply(missing).stream().map(this::toCached).toList();
+            for (User user : loaded) {
+                found.put(user.getUsername(), user);
+                localCache.put(user.getUsername(), user);
+                localIdIndex.put(user.getId(), user.getUsername());
+            }
+            if (!loaded.isEmpty()) {
+                putUsers(loaded);
+            }
+            List<String> notFound = missing.stream().filter(username -> !found.containsKey(username)).toList();
+            if (!notFound.isEmpty()) {
+                cacheNotFound(notFound, epoch);
+            }
+        }
+        
+        // 按请求顺序返回，跳过不存在的用户名
+        List<User> result = new ArrayList<>();
+        for (String username : new LinkedHashSet<>(usernames)) {
+            User user = found.get(username);
+            if (user != null) {
+                result.add(user);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 缓存用的用户副本，去掉密码哈希，减小缓存体积并避免其随缓存扩散
+     */
+    private User toCached(User user) {
+        if (user == null || user.getPassword() == null) {
+            return user;
+        }
+        User cached = new User();
+        BeanUtils.copyProperties(user, cached, "password");
+        return cached;
+    }
+    
+    /**
+     * 读取当前的缓存失效计数，需在查询数据库之前调用
+     */
+    private String currentInvalidationEpoch() {
+        String epoch = stringRedisTemplate.opsForValue().get(INVALIDATION_EPOCH_KEY);
+        return epoch != null ? epoch : "0";
+    }
+    
+    /**
+     * 写入"不存在"标记（一次脚本调用）：加载期间发生过缓存失效时放弃写入，避免刚提交的新用户在标记有效期内查不到；
+     * 使用 SET NX，不覆盖其他请求已写入的用户数据。写入成功的用户名同时放入本地缓存
+     * @param usernames 不存在的用户名
+     * @param epoch 查询数据库前读到的失效计数
+     */
+    @SuppressWarnings("unchecked")
+    private void cacheNotFound(List<String> usernames, String epoch) {
+        List<String> keys = new ArrayList<>(usernames.size() + 1);
+        keys.add(INVALIDATION_EPOCH_KEY);
+        usernames.forEach(username -> keys.add(buildKey(username)));
+        
+        List<Object> written = redisTemplate.execute(CACHE_NOT_FOUND_SCRIPT, RedisSerializer.byteArray(), null, keys,
+                epoch.getBytes(StandardCharsets.UTF_8),
+                ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(NOT_FOUND_MARKER),
+                String.valueOf(negativeTtl.toMillis()).getBytes(StandardCharsets.UTF_8));
+        if (written == null || written.isEmpty()) {
+            log.debug("加载期间用户缓存已失效，不缓存不存在标记: {}", usernames);
+            return;
+        }
+        for (int i = 0; i < usernames.size() && i < written.size(); i++) {
+            if (((Number) written.get(i)).longValue() == 1) {
+                localCache.put(usernames.get(i), NOT_FOUND);
+            }
+        }
+    }
+    
+    /**
+     * 以管道方式写入用户缓存：用户名 -> 用户，ID -> 用户名（ID缓存与用户名缓存共享同一份用户数据）
+     * 过期时间加随机抖动，避免同时写入的缓存同时过期
+     */
+    private void putUsers(Collection<User> users) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (User user : users) {
+                    long ttlMillis = jitteredTtlMillis();
+                    operations.opsForValue().set(buildKey(user.getUsername()), user, ttlMillis, TimeUnit.MILLISECONDS);
+                    operations.opsForValue().set(buildIdKey(user.getId()), user.getUsername(), ttlMillis, TimeUnit.MILLISECONDS);
+                }
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * 概率提前刷新（XFetch）：剩余时间越短，刷新概率越高
+     * 当 -window * ln(random) >= 剩余时间 时刷新
+     */
+    private boolean shouldRefreshEarly(Long ttlMillis) {
+        if (ttlMillis == null || ttlMillis < 0) {
+            return false;
+        }
+        double random = ThreadLocalRandom.current().nextDouble();
+        return -earlyRefreshWindow.toMillis() * Math.log(random) >= ttlMillis;
+    }
+    
+    private long jitteredTtlMillis() {
+        long base = TimeUnit.MINUTES.toMillis(CACHE_EXPIRE_TIME);
+        long jitter = ttlJitter.toMillis();
+        return jitter > 0 ? base + ThreadLocalRandom.current().nextLong(jitter + 1) : base;
+    }
+    
+    @Override
+    public void invalidate(Collection<String> usernames, Collection<Long> ids) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            PendingInvalidation pending = new PendingInvalidation();
+            pending.add(usernames, ids);
+            flushInvalidation(pending);
+            return;
+        }
+        
+        // 同一事务内的失效请求合并到一起，提交后统一发送
+        PendingInvalidation pending = (PendingInvalidation) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            PendingInvalidation created = new PendingInvalidation();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(UserCacheServiceImpl.this);
+                    if (status == STATUS_COMMITTED) {
+                        flushInvalidation(created);
+                    }
+                }
+            });
+            pending = created;
+        }
+        pending.add(usernames, ids);
+    }
+    
+    /**
+     * 一次管道请求删除所有用户名和ID缓存，并用一条消息通知其他节点
+     * 分页总数缓存不逐个删除：失效计数加一后，写入时记录了旧计数的总数全部失效
+     */
+    private void flushInvalidation(PendingInvalidation pending) {
+        List<String> keys = new ArrayList<>(pending.usernames.size() + pending.ids.size());
+        pending.usernames.forEach(username -> keys.add(buildKey(username)));
+        pending.ids.forEach(id -> keys.add(buildIdKey(id)));
+        
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                // 先增加失效计数，与之并发的加载不再写入"不存在"标记
+                operations.opsForValue().increment(INVALIDATION_EPOCH_KEY);
+                // 键很多时拆成多条DEL，避免单条命令阻塞Redis过久
+                for (int i = 0; i < keys.size(); i += INVALIDATE_DEL_BATCH_SIZE) {
+                    operations.delete(keys.subList(i, Math.min(i + INVALIDATE_DEL_BATCH_SIZE, keys.size())));
+                }
+                if (!pending.usernames.isEmpty()) {
+                    // 多个用户名以换行分隔，合并为一条通知
+                    operations.convertAndSend(USER_CACHE_CHANNEL, String.join("\n", pending.usernames));
+                }
+                return null;
+            }
+        });
+        localCache.invalidateAll(pending.usernames);
+        localIdIndex.invalidateAll(pending.ids);
+        log.debug("用户缓存已清除: {}个用户名, {}个ID", pending.usernames.size(), pending.ids.size());
+    }
+    
+    @Override
+    public long getCount(String filterKey, Supplier<Long> loader) {
+        String countKey = USER_COUNT_PREFIX + DigestUtils.md5DigestAsHex(filterKey.getBytes(StandardCharsets.UTF_8));
+        // 一次MGET同时取得失效计数和缓存的总数
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(List.of(INVALIDATION_EPOCH_KEY, countKey));
+        String epoch = values != null && values.get(0) != null ? values.get(0) : "0";
+        String cached = values != null ? values.get(1) : null;
+        if (cached != null) {
+            int separator = cached.indexOf(':');
+            if (separator > 0 && cached.substring(separator + 1).equals(epoch)) {
+                return Long.parseLong(cached.substring(0, separator));
+            }
+        }
+        
+        // 记录查询前读到的失效计数，查询期间发生的写入会使这次结果立即失效
+        long count = loader.get();
+        stringRedisTemplate.opsForValue().set(countKey, count + ":" + epoch, countCacheTtl);
+        return count;
+    }
+    
+    /**
+     * 接收其他节点的缓存失效通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        // 批量清除时多个用户名以换行分隔
+        localCache.invalidateAll(List.of(body.split("\n")));
+        log.debug("收到用户缓存失效通知: {}", body);
+    }
+    
+    private double redisHitRatio() {
+        long hits = redisHits.get();
+        long total = hits + redisMisses.get();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+    
+    private String buildKey(String username) {
+        return USER_CACHE_PREFIX + "username:" + username;
+    }
+    
+    private String buildIdKey(Long id) {
+        return USER_CACHE_PREFIX + "id:" + id;
+    }
+    
+    /**
+     * 事务内待清除的缓存
+     */
+    private static class PendingInvalidation {
+        private final Set<String> usernames = new LinkedHashSet<>();
+        private final Set<Long> ids = new LinkedHashSet<>();
+        
+        void add(Collection<String> usernames, Collection<Long> ids) {
+            this.usernames.addAll(usernames);
+            this.ids.addAll(ids);
+        }
+    }
+}
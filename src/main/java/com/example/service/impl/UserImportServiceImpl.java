@@ -0,0 +1,318 @@
+package com.example.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.example.entity.User;
+import com.example.mapper.UserMapper;
+import com.example.service.UserImportService;
+import com.example.service.UserService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * 用户批量导入Service实现类
+ * 每批次：校验 -> 一次查询已存在的用户名 -> 并行加密密码 -> JDBC批量插入（提交后批量清除缓存）
+ * 批量插入失败时回退为逐行插入，以便定位具体失败的行
+ */
+@Slf4j
+@Service
+public class UserImportServiceImpl implements UserImportService {
+    
+    @Autowired
+    private UserService userService;
+    
+    @Autowired
+    private UserMapper userMapper;
+    
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    @Qualifier("userImportHashExecutor")
+    private ThreadPoolTaskExecutor userImportHashExecutor;
+    
+    /**
+     * 每批次的行数，同时作为JDBC批量插入的大小
+     */
+    @Value("${app.user-import.batch-size:500}")
+    private int batchSize;
+    
+    @Override
+    public ImportResult importUsers(BufferedReader reader, String format, ImportListener listener) throws IOException {
+        boolean csv = !"ndjson".equalsIgnoreCase(format);
+        Counters counters = new Counters();
+        List<ImportRow> batch = new ArrayList<>(batchSize);
+        String[] header = null;
+        long lineNo = 0;
+        String line;
+        
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            if (line.isBlank()) {
+                continue;
+            }
+            
+            // CSV首行为表头
+            if (csv && header == null) {
+                header = parseCsvLine(line);
+                for (int i = 0; i < header.length; i++) {
+                    header[i] = header[i].trim().toLowerCase(Locale.ROOT);
+                }
+                Set<String> columns = new HashSet<>();
+                for (String column : header) {
+                    if (!columns.add(column)) {
+                        throw new IllegalArgumentException(column.isEmpty()
+                                ? "CSV表头包含多个空列名" : "CSV表头包含重复的列: " + column);
+                    }
+                }
+                if (!columns.contains("username") || !columns.contains("password")) {
+                    throw new IllegalArgumentException("CSV表头必须包含username和password列");
+                }
+                continue;
+            }
+            
+            try {
+                User user = csv ? fromCsv(header, parseCsvLine(line)) : objectMapper.readValue(line, User.class);
+                batch.add(new ImportRow(lineNo, user));
+            } catch (Exception e) {
+                // 只返回行号和字段名，不回显行内容（可能包含密码、手机号）
+                counters.processed++;
+                counters.failed++;
+                listener.onError(lineNo, null, describeParseError(e));
+            }
+            
+            if (batch.size() >= batchSize) {
+                importBatch(batch, counters, listener);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            importBatch(batch, counters, listener);
+        }
+        
+        log.info("用户导入完成: 处理{}行，成功{}行，失败{}行", counters.processed, counters.imported, counters.failed);
+        return counters.toResult();
+    }
+    
+    private void importBatch(List<ImportRow> batch, Counters counters, ImportListener listener) {
+        counters.processed += batch.size();
+        
+        // 1. 校验必填字段和文件内重复的用户名
+        List<ImportRow> valid = new ArrayList<>(batch.size());
+        Set<String> seen = new HashSet<>();
+        for (ImportRow row : batch) {
+            String username = row.user.getUsername();
+            String error = null;
+            if (!StringUtils.hasText(username)) {
+                error = "用户名不能为空";
+            } else if (username.contains("\n")) {
+                error = "用户名不能包含换行符";
+            } else if (!StringUtils.hasText(row.user.getPassword())) {
+                error = "密码不能为空";
+            } else if (!seen.add(username)) {
+                error = "用户名在文件中重复";
+            }
+            if (error != null) {
+                fail(row, error, counters, listener);
+            } else {
+                valid.add(row);
+            }
+        }
+        
+        // 2. 一次查询过滤掉已存在的用户名（包括之前批次已导入的）
+        if (!valid.isEmpty()) {
+            Set<String> existing = userMapper.selectList(new LambdaQueryWrapper<User>()
+                            .select(User::getUsername)
+                            .in(User::getUsername, seen)).stream()
+                    .map(User::getUsername)
+                    .collect(Collectors.toSet());
+            valid.removeIf(row -> {
+                if (existing.contains(row.user.getUsername())) {
+                    fail(row, "用户名已存在", counters, listener);
+                    return true;
+                }
+                return false;
+            });
+        }
+        
+        if (!valid.isEmpty()) {
+            // 3. 并行加密密码
+            List<CompletableFuture<String>> hashes = new ArrayList<>(valid.size());
+            for (ImportRow row : valid) {
+                String rawPassword = row.user.getPassword();
+                hashes.add(CompletableFuture.supplyAsync(() -> passwordEncoder.encode(rawPassword), userImportHashExecutor));
+            }
+            for (int i = 0; i < valid.size(); i++) {
+                User user = valid.get(i).user;
+                user.setId(null);
+                user.setPassword(hashes.get(i).join());
+            }
+            
+            // 4. JDBC批量插入，失败时逐行插入定位错误（缓存和用户名索引在提交后由UserService批量更新）
+            counters.imported += insertBatch(valid, counters, listener).size();
+        }
+        
+        listener.onProgress(counters.toResult());
+    }
+    
+    private List<ImportRow> insertBatch(List<ImportRow> rows, Counters counters, ImportListener listener) {
+        try {
+            userService.saveBatch(rows.stream().map(row -> row.user).toList(), batchSize);
+            return rows;
+        } catch (RuntimeException e) {
+            log.warn("批量插入用户失败，改为逐行插入: {}", e.getMessage());
+        }
+        
+        List<ImportRow> inserted = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            row.user.setId(null);
+            try {
+                userService.save(row.user);
+                inserted.add(row);
+            } catch (DuplicateKeyException e) {
+                fail(row, "用户名已存在", counters, listener);
+            } catch (RuntimeException e) {
+                // 数据库异常信息可能包含字段值，只记录在服务端日志中
+                log.debug("导入第{}行写入失败", row.line, e);
+                fail(row, "写入失败", counters, listener);
+            }
+        }
+        return inserted;
+    }
+    
+    private void fail(ImportRow row, String message, Counters counters, ImportListener listener) {
+        counters.failed++;
+        listener.onError(row.line, row.user.getUsername(), message);
+    }
+    
+    private User fromCsv(String[] header, String[] values) {
+        User user = new User();
+        for (int i = 0; i < header.length && i < values.length; i++) {
+            String value = values[i].trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            switch (header[i]) {
+                case "username" -> user.setUsername(value);
+                case "password" -> user.setPassword(value);
+                case "nickname" -> user.setNickname(value);
+                case "email" -> user.setEmail(value);
+                case "phone" -> user.setPhone(value);
+                case "gender" -> user.setGender(parseInteger(header[i], value));
+                case "status" -> user.setStatus(parseInteger(header[i], value));
+                default -> {
+                    // 忽略未知列
+                }
+            }
+        }
+        return user;
+    }
+    
+    private Integer parseInteger(String column, String value) {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("字段 " + column + " 格式错误");
+        }
+    }
+    
+    /**
+     * 生成解析失败的说明，只包含字段名（Jackson和数字解析的异常信息会带出原始内容）
+     */
+    private String describeParseError(Exception e) {
+        if (e instanceof JsonMappingException mappingException && !mappingException.getPath().isEmpty()) {
+            String field = mappingException.getPath().stream()
+                    .map(reference -> reference.getFieldName() != null
+                            ? reference.getFieldName() : String.valueOf(reference.getIndex()))
+                    .collect(Collectors.joining("."));
+            return "无法解析该行: 字段 " + field + " 格式错误";
+        }
+        if (e instanceof JsonProcessingException) {
+            return "无法解析该行: JSON格式错误";
+        }
+        if (e instanceof IllegalArgumentException) {
+            // fromCsv抛出的说明只包含字段名
+            return "无法解析该行: " + e.getMessage();
+        }
+        return "无法解析该行";
+    }
+    
+    /**
+     * 解析一行CSV，支持双引号包裹的字段和 "" 转义（不支持字段内换行）
+     */
+    private String[] parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+    
+    /**
+     * 待导入的一行
+     */
+    private static class ImportRow {
+        private final long line;
+        private final User user;
+        
+        ImportRow(long line, User user) {
+            this.line = line;
+            this.user = user;
+        }
+    }
+    
+    /**
+     * 导入计数
+     */
+    private static class Counters {
+        private long processed;
+        private long imported;
+        private long failed;
+        
+        ImportResult toResult() {
+            return new ImportResult(processed, imported, failed);
+        }
+    }
+}
@@ -1,19 +1,40 @@
 package com.example.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.conditions.update.LambdaUpdateChainWrapper;
+import com.baomidou.mybatisplus.extension.conditions.update.UpdateChainWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.example.entity.User;
 import com.example.mapper.UserMapper;
+import com.example.service.UserCacheService;
 import com.example.service.UserService;
+import com.example.service.UsernameIndexService;
+import com.example.util.CursorPageVO;
+import com.example.util.PageVO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
 import java.io.Serializable;
-import java.util.concurrent.TimeUnit;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * 用户Service实现类
@@ -23,57 +44,60 @@ import java.util.concurrent.TimeUnit;
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements UserService {
     
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private UserCacheService userCacheService;
     
-    /**
-     * Redis缓存前缀
-     */
-    private static final String USER_CACHE_PREFIX = "user:";
+    @Autowired
+    private UsernameIndexService usernameIndexService;
+    
+    @Override
+    public User findByUsername(String username) {
+        // 依次查询本地缓存、Redis缓存，均未命中时从数据库查询
+        return userCacheService.getByUsername(username, name -> baseMapper.selectOne(new LambdaQueryWrapper<User>()
+                .eq(User::getUsername, name)
+                .eq(User::getDeleted, 0)));
+    }
+    
+    @Override
+    public String getPasswordHash(Long id) {
+        User user = baseMapper.selectOne(new LambdaQueryWrapper<User>()
+                .select(User::getPassword)
+                .eq(User::getId, id));
+        return user != null ? user.getPassword() : null;
+    }
     
     /**
-     * 缓存过期时间（30分钟）
+     * 重写getById方法，添加缓存逻辑
      */
-    private static final long CACHE_EXPIRE_TIME = 30;
+    @Override
+    public User getById(Serializable id) {
+        if (id instanceof Long userId) {
+            return userCacheService.getById(userId, key -> baseMapper.selectById(key));
+        }
+        return super.getById(id);
+    }
     
     @Override
-    public User findByUsername(String username) {
-        // 构建缓存key
-        String cacheKey = USER_CACHE_PREFIX + "username:" + username;
-        
-        // 从缓存中获取用户信息
-        User user = (User) redisTemplate.opsForValue().get(cacheKey);
-        
-        if (user == null) {
-            // 缓存不存在，从数据库查询
-            user = baseMapper.selectOne(new LambdaQueryWrapper<User>()
-                    .eq(User::getUsername, username)
-                    .eq(User::getDeleted, 0));
-            
-            if (user != null) {
-                // 将用户信息存入缓存，设置30分钟过期
-                redisTemplate.opsForValue().set(cacheKey, user, CACHE_EXPIRE_TIME, TimeUnit.MINUTES);
-                log.info("用户信息已存入缓存: {}", username);
-            }
-        } else {
-            log.info("从缓存中获取用户信息: {}", username);
+    public List<User> getByIds(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
         }
-        
-        return user;
+        return userCacheService.getByIds(ids, missing -> baseMapper.selectBatchIds(missing));
     }
     
     @Override
-    public Page<User> pageUser(Integer pageNum, Integer pageSize, String username) {
-        // 构建查询条件
-        LambdaQueryWrapper<User> queryWrapper = new LambdaQueryWrapper<User>()
-                .eq(User::getDeleted, 0);
-        
-        // 用户名模糊查询
-        if (StringUtils.hasText(username)) {
-            queryWrapper.like(User::getUsername, username);
-            log.info("用户名模糊查询: {}", username);
-        } else {
-            log.info("未提供用户名，查询所有用户");
+    public List<User> getByUsernames(Collection<String> usernames) {
+        if (usernames == null || usernames.isEmpty()) {
+            return new ArrayList<>();
         }
+        return userCacheService.getByUsernames(usernames, missing -> baseMapper.selectList(new LambdaQueryWrapper<User>()
+                .in(User::getUsername, missing)
+                .eq(User::getDeleted, 0)));
+    }
+    
+    @Override
+    public Page<User> pageUser(Integer pageNum, Integer pageSize, String username) {
+        // 构建查询条件（用户名模糊查询优先使用内存索引）
+        LambdaQueryWrapper<User> queryWrapper = buildQueryWrapper(username);
         
         // 按创建时间倒序排序
         queryWrapper.orderByDesc(User::getCreateTime);
@@ -81,19 +105,187 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         // 执行分页查询
         Page<User> page = new Page<>(pageNum, pageSize);
         Page<User> result = baseMapper.selectPage(page, queryWrapper);
-        log.info("分页查询用户，页码: {}, 每页数量: {}, 总记录数: {}", pageNum, pageSize, result.getTotal());
+        log.debug("分页查询用户，用户名: {}, 页码: {}, 每页数量: {}, 总记录数: {}", username, pageNum, pageSize, result.getTotal());
+        return result;
+    }
+    
+    @Override
+    public PageVO<User> pageUser(Integer pageNum, Integer pageSize, String username, TotalMode totalMode) {
+        PageVO<User> result = new PageVO<>();
+        
+        if (totalMode == null || totalMode == TotalMode.EXACT) {
+            Page<User> page = pageUser(pageNum, pageSize, username);
+            result.setList(page.getRecords());
+            result.setTotal(page.getTotal());
+            result.setTotalMode("exact");
+            result.setHasNext(page.getCurrent() < page.getPages());
+            return result;
+        }
+        
+        int current = pageNum == null || pageNum < 1 ? 1 : pageNum;
+        int size = pageSize == null || pageSize < 1 ? 10 : pageSize;
+        
+        // 按创建时间倒序排序
+        LambdaQueryWrapper<User> queryWrapper = buildQueryWrapper(username)
+                .orderByDesc(User::getCreateTime);
+        
+        if (totalMode == TotalMode.NONE) {
+            // 不统计总数，多查一条用于判断是否有下一页
+            queryWrapper.last("LIMIT " + ((long) (current - 1) * size) + ", " + (size + 1));
+            List<User> records = baseMapper.selectList(queryWrapper);
+            boolean hasNext = records.size() > size;
+            result.setList(hasNext ? records.subList(0, size) : records);
+            result.setTotalMode("none");
+            result.setHasNext(hasNext);
+            return result;
+        }
+        
+        // 执行分页查询，不执行COUNT
+        Page<User> page = baseMapper.selectPage(new Page<>(current, size, false), queryWrapper);
+        
+        Long total = null;
+        if (totalMode == TotalMode.ESTIMATED && !StringUtils.hasText(username)) {
+            total = baseMapper.estimateRowCount();
+            result.setTotalMode("estimated");
+        }
+        if (total == null) {
+            total = countWithCache(username);
+            result.setTotalMode("cached");
+        }
+        
+        result.setList(page.getRecords());
+        result.setTotal(total);
+        result.setHasNext((long) current * size < total);
+        log.debug("分页查询用户，页码: {}, 每页数量: {}, 总记录数: {}（{}）", current, size, total, result.getTotalMode());
+        return result;
+    }
+    
+    /**
+     * 统计满足条件的用户数，结果按查询条件短时间缓存
+     */
+    private long countWithCache(String username) {
+        String filterKey = StringUtils.hasText(username) ? "like:" + username : "all";
+        return userCacheService.getCount(filterKey, () -> baseMapper.selectCount(buildQueryWrapper(username)));
+    }
+    
+    @Override
+    public void streamUsers(String username, Consumer<User> consumer) {
+        // 按主键顺序读取，避免大结果集排序
+        LambdaQueryWrapper<User> queryWrapper = buildQueryWrapper(username)
+                .orderByAsc(User::getId);
+        baseMapper.streamUsers(queryWrapper, context -> consumer.accept(context.getResultObject()));
+    }
+    
+    /**
+     * 构建用户列表查询条件（未删除 + 用户名模糊查询）
+     * 用户名模糊查询先通过内存trigram索引解析出用户ID，只按主键查询匹配的行；
+     * 索引未就绪或匹配过多时回退到 LIKE 查询
+     */
+    private LambdaQueryWrapper<User> buildQueryWrapper(String username) {
+        LambdaQueryWrapper<User> queryWrapper = new LambdaQueryWrapper<User>()
+                .eq(User::getDeleted, 0);
+        if (StringUtils.hasText(username)) {
+            List<Long> ids = usernameIndexService.search(username);
+            if (ids == null) {
+                queryWrapper.like(User::getUsername, username);
+            } else if (ids.isEmpty()) {
+                queryWrapper.apply("1 = 0");
+            } else {
+                queryWrapper.in(User::getId, ids);
+            }
+        }
+        return queryWrapper;
+    }
+    
+    @Override
+    public CursorPageVO<User> pageUserByCursor(String cursor, Integer pageSize, String username) {
+        int size = pageSize == null || pageSize < 1 ? 10 : pageSize;
+        
+        // 构建查询条件
+        LambdaQueryWrapper<User> queryWrapper = buildQueryWrapper(username);
+        
+        // 从上一页最后一条记录之后开始查询，利用(create_time, id)索引定位，无需扫描跳过前面的行
+        if (StringUtils.hasText(cursor)) {
+            long[] position = decodeCursor(cursor);
+            queryWrapper.apply("(create_time, id) < ({0}, {1})", new Date(position[0]), position[1]);
+        }
+        
+        // 按创建时间、ID倒序排序，多查一条用于判断是否有下一页
+        queryWrapper.orderByDesc(User::getCreateTime, User::getId)
+                .last("LIMIT " + (size + 1));
+        
+        List<User> records = baseMapper.selectList(queryWrapper);
+        boolean hasNext = records.size() > size;
+        if (hasNext) {
+            records = records.subList(0, size);
+        }
+        
+        CursorPageVO<User> result = new CursorPageVO<>();
+        result.setList(records);
+        result.setHasNext(hasNext);
+        if (hasNext) {
+            User last = records.get(records.size() - 1);
+            result.setNextCursor(encodeCursor(last));
+        }
+        log.debug("游标分页查询用户，每页数量: {}, 本页记录数: {}", size, records.size());
         return result;
     }
     
+    /**
+     * 将记录位置编码为不透明的游标（创建时间毫秒数,ID）
+     */
+    private String encodeCursor(User user) {
+        long createTime = user.getCreateTime() != null ? user.getCreateTime().getTime() : 0L;
+        String position = createTime + "," + user.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * 解析游标，返回 [创建时间毫秒数, ID]
+     */
+    private long[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split(",");
+            return new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+    }
+    
     /**
      * 重写save方法，添加缓存逻辑
+     * 缓存失效在事务提交后统一执行，下同
      */
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean save(User user) {
         boolean result = super.save(user);
         if (result) {
-            // 清除相关缓存
-            clearUserCache(user.getUsername());
+            // 清除"不存在"标记和分页总数缓存
+            invalidateUserCache(List.of(user));
+            // 更新用户名索引
+            afterCommit(() -> usernameIndexService.upsert(user.getId(), user.getUsername()));
+        }
+        return result;
+    }
+    
+    /**
+     * 重写saveBatch方法，添加缓存逻辑
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean saveBatch(Collection<User> users, int batchSize) {
+        boolean result = super.saveBatch(users, batchSize);
+        if (result) {
+            invalidateUserCache(users);
+            Map<Long, String> indexed = new LinkedHashMap<>();
+            for (User user : users) {
+                if (user.getId() != null && user.getUsername() != null) {
+                    indexed.put(user.getId(), user.getUsername());
+                }
+            }
+            afterCommit(() -> usernameIndexService.upsertAll(indexed));
         }
         return result;
     }
@@ -102,16 +294,41 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
      * 重写updateById方法，添加缓存逻辑
      */
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean updateById(User user) {
-        // 获取原用户名
-        User oldUser = baseMapper.selectById(user.getId());
+        // 获取原用户名（优先从缓存获取）
+        User oldUser = getById(user.getId());
         boolean result = super.updateById(user);
         
         if (result) {
-            // 清除原用户名缓存
-            clearUserCache(oldUser.getUsername());
-            // 清除新用户名缓存
-            clearUserCache(user.getUsername());
+            // 清除原用户名和新用户名的缓存
+            List<User> changed = new ArrayList<>();
+            changed.add(user);
+            if (oldUser != null) {
+                changed.add(oldUser);
+            }
+            invalidateUserCache(changed);
+            // 更新用户名索引
+            afterCommit(() -> updateUsernameIndex(List.of(user)));
+        }
+        return result;
+    }
+    
+    /**
+     * 重写updateBatchById方法，添加缓存逻辑
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean updateBatchById(Collection<User> users, int batchSize) {
+        // 批量获取原用户名（一次MGET）
+        List<User> oldUsers = getByIds(users.stream().map(User::getId).filter(Objects::nonNull).toList());
+        boolean result = super.updateBatchById(users, batchSize);
+        
+        if (result) {
+            List<User> changed = new ArrayList<>(users);
+            changed.addAll(oldUsers);
+            invalidateUserCache(changed);
+            afterCommit(() -> updateUsernameIndex(users));
         }
         return result;
     }
@@ -120,24 +337,234 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
      * 重写removeById方法，添加缓存逻辑
      */
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean removeById(Serializable id) {
-        // 获取原用户名
-        User user = baseMapper.selectById(id);
+        // 获取原用户名（优先从缓存获取）
+        User user = getById(id);
         boolean result = super.removeById(id);
         
+        if (result && user != null) {
+            invalidateUserCache(List.of(user));
+            // 从用户名索引中移除
+            afterCommit(() -> usernameIndexService.remove(user.getId()));
+        }
+        return result;
+    }
+    
+    /**
+     * 重写removeByIds方法，添加缓存逻辑
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean removeByIds(Collection<?> list) {
+        List<User> users = getByIds(toLongIds(list));
+        boolean result = super.removeByIds(list);
         if (result) {
-            // 清除缓存
-            clearUserCache(user.getUsername());
+            removeFromCacheAndIndex(users);
         }
         return result;
     }
     
     /**
-     * 清除用户缓存
+     * 重写removeBatchByIds方法，添加缓存逻辑
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean removeBatchByIds(Collection<?> list, int batchSize, boolean useFill) {
+        List<User> users = getByIds(toLongIds(list));
+        boolean result = super.removeBatchByIds(list, batchSize, useFill);
+        if (result) {
+            removeFromCacheAndIndex(users);
+        }
+        return result;
+    }
+    
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean removeBatchByIds(Collection<?> list, int batchSize) {
+        return writeAndSync(selectUsers(toLongIds(list)), () -> super.removeBatchByIds(list, batchSize));
+    }
+    
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean removeById(Serializable id, boolean useFill) {
+        return writeAndSync(selectUsers(toLongIds(List.of(id))), () -> super.removeById(id, useFill));
+    }
+    
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean removeById(User user) {
+        return writeAndSync(selectUsers(toLongIds(List.of(user))), () -> super.removeById(user));
+    }
+    
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean removeByIds(Collection<?> list, boolean useFill) {
+        return writeAndSync(selectUsers(toLongIds(list)), () -> super.removeByIds(list, useFill));
+    }
+    
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean removeByMap(Map<String, Object> columnMap) {
+        return writeAndSync(baseMapper.selectByMap(columnMap), () -> super.removeByMap(columnMap));
+    }
+    
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean remove(Wrapper<User> queryWrapper) {
+        return writeAndSync(baseMapper.selectList(queryWrapper), () -> super.remove(queryWrapper));
+    }
+    
+    /**
+     * 条件更新：update(wrapper)、saveOrUpdate(entity, wrapper) 也经由此方法
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean update(User entity, Wrapper<User> updateWrapper) {
+        return writeAndSync(baseMapper.selectList(updateWrapper), () -> super.update(entity, updateWrapper));
+    }
+    
+    /**
+     * 父类实现直接调用 insertOrUpdate，这里改为经由已处理缓存的 save / updateById
      */
-    private void clearUserCache(String username) {
-        String cacheKey = USER_CACHE_PREFIX + "username:" + username;
-        redisTemplate.delete(cacheKey);
-        log.info("用户缓存已清除: {}", username);
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean saveOrUpdate(User user) {
+        if (user.getId() == null || baseMapper.selectById(user.getId()) == null) {
+            return save(user);
+        }
+        return updateById(user);
+    }
+    
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean saveOrUpdateBatch(Collection<User> users, int batchSize) {
+        List<User> oldUsers = selectUsers(users.stream().map(User::getId).filter(Objects::nonNull).toList());
+        boolean result = super.saveOrUpdateBatch(users, batchSize);
+        if (result) {
+            List<User> changed = new ArrayList<>(users);
+            changed.addAll(oldUsers);
+            invalidateUserCache(changed);
+            afterCommit(() -> updateUsernameIndex(users));
+        }
+        return result;
+    }
+    
+    /**
+     * 链式更新直接调用Mapper，无法清除缓存，禁止使用
+     */
+    @Override
+    public UpdateChainWrapper<User> update() {
+        throw new UnsupportedOperationException("用户不支持链式更新，请使用 update(entity, wrapper)");
+    }
+    
+    @Override
+    public LambdaUpdateChainWrapper<User> lambdaUpdate() {
+        throw new UnsupportedOperationException("用户不支持链式更新，请使用 update(entity, wrapper)");
+    }
+    
+    /**
+     * 执行写入，并按写入后数据库中的数据清除受影响用户的缓存、同步用户名索引
+     * 用于写入前无法确定新用户名的方法（条件更新、条件删除等）：写入后已不存在的用户从索引移除
+     * @param affected 写入前查出的受影响用户
+     * @param write 写入操作
+     * @return 写入结果
+     */
+    private boolean writeAndSync(List<User> affected, BooleanSupplier write) {
+        boolean result = write.getAsBoolean();
+        if (!result || affected.isEmpty()) {
+            return result;
+        }
+        
+        List<Long> ids = affected.stream().map(User::getId).toList();
+        List<User> current = baseMapper.selectBatchIds(ids);
+        List<User> changed = new ArrayList<>(affected);
+        changed.addAll(current);
+        invalidateUserCache(changed);
+        
+        Map<Long, String> upserts = new LinkedHashMap<>();
+        for (User user : current) {
+            upserts.put(user.getId(), user.getUsername());
+        }
+        List<Long> removals = ids.stream().filter(id -> !upserts.containsKey(id)).toList();
+        afterCommit(() -> {
+            usernameIndexService.upsertAll(upserts);
+            usernameIndexService.removeAll(removals);
+        });
+        return result;
+    }
+    
+    /**
+     * 按ID从数据库查询用户（不经过缓存，写入前取得旧用户名）
+     */
+    private List<User> selectUsers(List<Long> ids) {
+        return ids.isEmpty() ? new ArrayList<>() : baseMapper.selectBatchIds(ids);
+    }
+    
+    private void removeFromCacheAndIndex(List<User> users) {
+        invalidateUserCache(users);
+        List<Long> ids = users.stream().map(User::getId).toList();
+        afterCommit(() -> usernameIndexService.removeAll(ids));
+    }
+    
+    private void updateUsernameIndex(Collection<User> users) {
+        Map<Long, String> upserts = new LinkedHashMap<>();
+        List<Long> removals = new ArrayList<>();
+        for (User user : users) {
+            if (user.getDeleted() != null && user.getDeleted() == 1) {
+                removals.add(user.getId());
+            } else if (user.getUsername() != null) {
+                upserts.put(user.getId(), user.getUsername());
+            }
+        }
+        usernameIndexService.upsertAll(upserts);
+        usernameIndexService.removeAll(removals);
+    }
+    
+    private List<Long> toLongIds(Collection<?> list) {
+        List<Long> ids = new ArrayList<>(list.size());
+        for (Object id : list) {
+            if (id instanceof Number number) {
+                ids.add(number.longValue());
+            } else if (id instanceof User user && user.getId() != null) {
+                ids.add(user.getId());
+            } else if (id != null) {
+                ids.add(Long.valueOf(id.toString()));
+            }
+        }
+        return ids;
+    }
+    
+    /**
+     * 清除用户缓存（用户名、ID和分页总数），事务中调用时在提交后统一执行
+     */
+    private void invalidateUserCache(Collection<User> users) {
+        Set<String> usernames = new LinkedHashSet<>();
+        Set<Long> ids = new LinkedHashSet<>();
+        for (User user : users) {
+            if (user.getUsername() != null) {
+                usernames.add(user.getUsername());
+            }
+            if (user.getId() != null) {
+                ids.add(user.getId());
+            }
+        }
+        userCacheService.invalidate(usernames, ids);
+    }
+    
+    /**
+     * 在当前事务提交后执行；不在事务中时立即执行
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
     }
-}
\ No newline at end of file
+}
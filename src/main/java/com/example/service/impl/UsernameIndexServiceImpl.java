@@ -0,0 +1,451 @@
+package com.example.service.impl;
+
+import com.example.mapper.UserMapper;
+import com.example.service.UsernameIndexService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 用户名子串检索索引Service实现类
+ * 每个用户名按三个字符切分为trigram，trigram -> 有序的用户ID数组；
+ * 查询时对关键字的所有trigram求交集，再用原用户名校验消除误判
+ */
+@Slf4j
+@Service
+public class UsernameIndexServiceImpl implements UsernameIndexService, MessageListener {
+    
+    @Autowired
+    private UserMapper userMapper;
+    
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    /**
+     * 索引变更通知频道，消息格式：U:id:username 或 D:id
+     */
+    private static final String INDEX_CHANNEL = "user:index:change";
+    
+    private static final int GRAM_SIZE = 3;
+    
+    /**
+     * 单次查询允许返回的最大ID数，超过时回退到数据库模糊查询（避免超长IN列表）
+     */
+    @Value("${app.user-search.max-ids:5000}")
+    private int maxIds;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    /**
+     * 用户ID -> 小写用户名
+     */
+    private Map<Long, String> usernames = new HashMap<>();
+    
+    /**
+     * trigram -> 用户ID集合
+     */
+    private Map<String, LongSortedSet> postings = new HashMap<>();
+    
+    /**
+     * 全量重建期间发生的增量变更（受写锁保护），重建完成后在新索引上重放；不在重建时为null
+     */
+    private List<PendingChange> pendingChanges;
+    
+    private volatile boolean ready;
+    
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(INDEX_CHANNEL));
+        Gauge.builder("user.search.index.size", this, service -> service.size())
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 启动完成后从数据库构建索引，构建完成前查询回退到数据库
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+    
+    /**
+     * 定期全量重建，修正遗漏的变更通知
+     */
+    @Scheduled(initialDelayString = "${app.user-search.rebuild-interval-ms:3600000}",
+            fixedDelayString = "${app.user-search.rebuild-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        Map<Long, String> newUsernames = new HashMap<>();
+        Map<String, LongSortedSet> newPostings = new HashMap<>();
+        
+        // 扫描期间的增量变更写入旧索引，同时记录下来，切换后在新索引上重放，避免被扫描结果覆盖而丢失
+        lock.writeLock().lock();
+        try {
+            pendingChanges = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        
+        try {
+            // 流式读取，不在内存中保留完整的User列表
+            userMapper.scanUsernames(context -> {
+                com.example.entity.User user = context.getResultObject();
+                if (user.getId() != null && user.getUsername() != null) {
+                    String username = user.getUsername().toLowerCase(Locale.ROOT);
+                    newUsernames.put(user.getId(), username);
+                    for (String gram : grams(username)) {
+                        newPostings.computeIfAbsent(gram, key -> new LongSortedSet()).add(user.getId());
+                    }
+                }
+            });
+        } catch (Exception e) {
+            lock.writeLock().lock();
+            try {
+                pendingChanges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("构建用户名索引失败", e);
+            return;
+        }
+        newPostings.values().forEach(LongSortedSet::trim);
+        
+        int replayed;
+        lock.writeLock().lock();
+        try {
+            usernames = newUsernames;
+            postings = newPostings;
+            List<PendingChange> changes = pendingChanges;
+            pendingChanges = null;
+            // 按发生顺序重放，扫描结果中已包含的变更重放后不改变结果
+            for (PendingChange change : changes) {
+                if (change.username != null) {
+                    doUpsert(change.id, change.username);
+                } else {
+                    doRemove(change.id);
+                }
+            }
+            replayed = changes.size();
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("用户名索引构建完成，用户数: {}，trigram数: {}，重放变更: {}，耗时: {}ms",
+                newUsernames.size(), newPostings.size(), replayed, System.currentTimeMillis() - start);
+    }
+    
+    @Override
+    public List<Long> search(String keyword) {
+        if (!ready || keyword == null || keyword.isEmpty()) {
+            return null;
+        }
+        String needle = keyword.toLowerCase(Locale.ROOT);
+        
+        lock.readLock().lock();
+        try {
+            List<Long> result = new ArrayList<>();
+            if (needle.length() < GRAM_SIZE) {
+                // 关键字过短无法切分trigram，直接扫描内存中的用户名
+                for (Map.Entry<Long, String> entry : usernames.entrySet()) {
+                    if (entry.getValue().contains(needle)) {
+                        if (result.size() >= maxIds) {
+                            return null;
+                        }
+                        result.add(entry.getKey());
+                    }
+                }
+                result.sort(Comparator.naturalOrder());
+                return result;
+            }
+            
+            // 取出所有trigram的ID集合，从最小的集合开始求交集
+            List<String> grams = grams(needle);
+            List<LongSortedSet> sets = new ArrayList<>(grams.size());
+            for (String gram : grams) {
+                LongSortedSet set = postings.get(gram);
+                if (set == null) {
+                    return result;
+                }
+                sets.add(set);
+            }
+            sets.sort(Comparator.comparingInt(LongSortedSet::size));
+            
+            LongSortedSet smallest = sets.get(0);
+            for (int i = 0; i < smallest.size(); i++) {
+                long id = smallest.get(i);
+                boolean matched = true;
+                for (int j = 1; j < sets.size() && matched; j++) {
+                    matched = sets.get(j).contains(id);
+                }
+                // trigram全部命中不代表连续出现，用原用户名校验
+                if (matched && usernames.getOrDefault(id, "").contains(needle)) {
+                    if (result.size() >= maxIds) {
+                        return null;
+                    }
+                    result.add(id);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public void upsert(Long id, String username) {
+        if (id == null || username == null) {
+            return;
+        }
+        applyUpsert(id, username);
+        stringRedisTemplate.convertAndSend(INDEX_CHANNEL, "U:" + id + ":" + username);
+    }
+    
+    @Override
+    public void upsertAll(Map<Long, String> usernames) {
+        if (usernames.isEmpty()) {
+            return;
+        }
+        usernames.forEach(this::applyUpsert);
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                usernames.forEach((id, username) -> operations.convertAndSend(INDEX_CHANNEL, "U:" + id + ":" + username));
+                return null;
+            }
+        });
+    }
+    
+    @Override
+    public void remove(Long id) {
+        if (id == null) {
+            return;
+        }
+        applyRemove(id);
+        stringRedisTemplate.convertAndSend(INDEX_CHANNEL, "D:" + id);
+    }
+    
+    @Override
+    public void removeAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        ids.forEach(this::applyRemove);
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                ids.forEach(id -> operations.convertAndSend(INDEX_CHANNEL, "D:" + id));
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * 接收其他节点的索引变更通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            String[] parts = body.split(":", 3);
+            Long id = Long.valueOf(parts[1]);
+            if ("U".equals(parts[0]) && parts.length == 3) {
+                applyUpsert(id, parts[2]);
+            } else if ("D".equals(parts[0])) {
+                applyRemove(id);
+            }
+        } catch (RuntimeException e) {
+            log.warn("无法解析用户名索引变更通知: {}", body);
+        }
+    }
+    
+    private void applyUpsert(Long id, String username) {
+        String normalized = username.toLowerCase(Locale.ROOT);
+        lock.writeLock().lock();
+        try {
+            if (pendingChanges != null) {
+                pendingChanges.add(new PendingChange(id, normalized));
+            }
+            doUpsert(id, normalized);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private void applyRemove(Long id) {
+        lock.writeLock().lock();
+        try {
+            if (pendingChanges != null) {
+                pendingChanges.add(new PendingChange(id, null));
+            }
+            doRemove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 更新索引中的用户名，调用方需持有写锁
+     */
+    private void doUpsert(Long id, String normalized) {
+        String previous = usernames.put(id, normalized);
+        if (normalized.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            removePostings(id, previous);
+        }
+        for (String gram : grams(normalized)) {
+            postings.computeIfAbsent(gram, key -> new LongSortedSet()).add(id);
+        }
+    }
+    
+    /**
+     * 从索引中移除用户，调用方需持有写锁
+     */
+    private void doRemove(Long id) {
+        String previous = usernames.remove(id);
+        if (previous != null) {
+            removePostings(id, previous);
+        }
+    }
+    
+    private void removePostings(Long id, String username) {
+        for (String gram : grams(username)) {
+            LongSortedSet set = postings.get(gram);
+            if (set != null) {
+                set.remove(id);
+                if (set.size() == 0) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+    
+    private int size() {
+        lock.readLock().lock();
+        try {
+            return usernames.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 切分字符串的所有trigram（去重）
+     */
+    private static List<String> grams(String value) {
+        List<String> grams = new ArrayList<>();
+        for (int i = 0; i + GRAM_SIZE <= value.length(); i++) {
+            String gram = value.substring(i, i + GRAM_SIZE);
+            if (!grams.contains(gram)) {
+                grams.add(gram);
+            }
+        }
+        return grams;
+    }
+    
+    /**
+     * 重建期间记录的增量变更，username为null表示删除
+     */
+    private static final class PendingChange {
+        private final Long id;
+        private final String username;
+        
+        PendingChange(Long id, String username) {
+            this.id = id;
+            this.username = username;
+        }
+    }
+    
+    /**
+     * 基于有序long数组的ID集合，避免装箱，每个ID只占8字节
+     */
+    private static final class LongSortedSet {
+        private long[] values = new long[4];
+        private int size;
+        
+        int size() {
+            return size;
+        }
+        
+        long get(int index) {
+            return values[index];
+        }
+        
+        boolean contains(long value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+        
+        void add(long value) {
+            // ID自增，通常直接追加到末尾
+            if (size == 0 || values[size - 1] < value) {
+                ensureCapacity();
+                values[size++] = value;
+                return;
+            }
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                return;
+            }
+            int insertAt = -index - 1;
+            ensureCapacity();
+            System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+            values[insertAt] = value;
+            size++;
+        }
+        
+        void remove(long value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+        }
+        
+        void trim() {
+            if (values.length > size) {
+                values = Arrays.copyOf(values, Math.max(size, 1));
+            }
+        }
+        
+        private void ensureCapacity() {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, values.length + (values.length >> 1) + 1);
+            }
+        }
+    }
+}
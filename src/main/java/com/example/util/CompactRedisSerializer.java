@@ -0,0 +1,349 @@
+package com.example.util;
+
+import com.example.entity.User;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑二进制Redis值序列化器
+ * 格式：魔数(1字节) + 标志(1字节，bit0表示已压缩) + 带类型标签的值
+ * 字符串、整数和用户对象使用自定义二进制编码（变长整数、字段位图），不写入类名等类型元数据；
+ * 其他类型退回JSON编码。超过压缩阈值的值使用Deflate压缩。
+ * 不以魔数开头的旧数据按JSON（GenericJackson2JsonRedisSerializer）解析，切换序列化器后无需清空Redis
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * 魔数：0xFE 不会出现在UTF-8文本中，可与旧的JSON数据区分
+     */
+    private static final byte MAGIC = (byte) 0xFE;
+
+    private static final byte FLAG_DEFLATED = 0x01;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_LONG = 2;
+    private static final byte TAG_INTEGER = 3;
+    private static final byte TAG_TRUE = 4;
+    private static final byte TAG_FALSE = 5;
+    private static final byte TAG_USER = 6;
+    private static final byte TAG_JSON = 7;
+
+    /**
+     * 用户对象字段位图（新增字段只能追加在末尾）
+     */
+    private static final int FIELD_ID = 1;
+    private static final int FIELD_USERNAME = 1 << 1;
+    private static final int FIELD_PASSWORD = 1 << 2;
+    private static final int FIELD_NICKNAME = 1 << 3;
+    private static final int FIELD_EMAIL = 1 << 4;
+    private static final int FIELD_PHONE = 1 << 5;
+    private static final int FIELD_GENDER = 1 << 6;
+    private static final int FIELD_STATUS = 1 << 7;
+    private static final int FIELD_CREATE_TIME = 1 << 8;
+    private static final int FIELD_UPDATE_TIME = 1 << 9;
+    private static final int FIELD_DELETED = 1 << 10;
+
+    private final GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer();
+
+    /**
+     * 压缩阈值（字节），编码后超过该长度时压缩；小于等于0时不压缩
+     */
+    private final int compressionThreshold;
+
+    public CompactRedisSerializer(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        Output out = new Output();
+        out.write(MAGIC);
+        out.write(0);
+        writeValue(out, value);
+
+        byte[] bytes = out.toByteArray();
+        if (compressionThreshold > 0 && bytes.length > compressionThreshold) {
+            byte[] deflated = deflate(bytes, 2);
+            if (deflated.length + 2 < bytes.length) {
+                Output compressed = new Output();
+                compressed.write(MAGIC);
+                compressed.write(FLAG_DEFLATED);
+                compressed.write(deflated, 0, deflated.length);
+                return compressed.toByteArray();
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            // 旧格式数据
+            return jsonSerializer.deserialize(bytes);
+        }
+        if (bytes.length < 3) {
+            throw new SerializationException("无效的缓存数据");
+        }
+
+        Input in = (bytes[1] & FLAG_DEFLATED) != 0
+                ? new Input(inflate(bytes, 2), 0)
+                : new Input(bytes, 2);
+        return readValue(in);
+    }
+
+    private void writeValue(Output out, Object value) {
+        if (value == null) {
+            out.write(TAG_NULL);
+        } else if (value instanceof String text) {
+            out.write(TAG_STRING);
+            out.writeString(text);
+        } else if (value instanceof Long number) {
+            out.write(TAG_LONG);
+            out.writeVarLong(number);
+        } else if (value instanceof Integer number) {
+            out.write(TAG_INTEGER);
+            out.writeVarLong(number);
+        } else if (value instanceof Boolean flag) {
+            out.write(flag ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof User user) {
+            out.write(TAG_USER);
+            writeUser(out, user);
+        } else {
+            byte[] json = jsonSerializer.serialize(value);
+            out.write(TAG_JSON);
+            out.writeVarLong(json.length);
+            out.write(json, 0, json.length);
+        }
+    }
+
+    private Object readValue(Input in) {
+        byte tag = in.read();
+        return switch (tag) {
+            case TAG_NULL -> null;
+            case TAG_STRING -> in.readString();
+            case TAG_LONG -> in.readVarLong();
+            case TAG_INTEGER -> (int) in.readVarLong();
+            case TAG_TRUE -> Boolean.TRUE;
+            case TAG_FALSE -> Boolean.FALSE;
+            case TAG_USER -> readUser(in);
+            case TAG_JSON -> jsonSerializer.deserialize(in.readBytes((int) in.readVarLong()));
+            default -> throw new SerializationException("未知的缓存数据类型: " + tag);
+        };
+    }
+
+    private void writeUser(Output out, User user) {
+        int fields = 0;
+        fields |= user.getId() != null ? FIELD_ID : 0;
+        fields |= user.getUsername() != null ? FIELD_USERNAME : 0;
+        fields |= user.getPassword() != null ? FIELD_PASSWORD : 0;
+        fields |= user.getNickname() != null ? FIELD_NICKNAME : 0;
+        fields |= user.getEmail() != null ? FIELD_EMAIL : 0;
+        fields |= user.getPhone() != null ? FIELD_PHONE : 0;
+        fields |= user.getGender() != null ? FIELD_GENDER : 0;
+        fields |= user.getStatus() != null ? FIELD_STATUS : 0;
+        fields |= user.getCreateTime() != null ? FIELD_CREATE_TIME : 0;
+        fields |= user.getUpdateTime() != null ? FIELD_UPDATE_TIME : 0;
+        fields |= user.getDeleted() != null ? FIELD_DELETED : 0;
+        out.writeVarLong(fields);
+
+        if (user.getId() != null) {
+            out.writeVarLong(user.getId());
+        }
+        if (user.getUsername() != null) {
+            out.writeString(user.getUsername());
+        }
+        if (user.getPassword() != null) {
+            out.writeString(user.getPassword());
+        }
+        if (user.getNickname() != null) {
+            out.writeString(user.getNickname());
+        }
+        if (user.getEmail() != null) {
+            out.writeString(user.getEmail());
+        }
+        if (user.getPhone() != null) {
+            out.writeString(user.getPhone());
+        }
+        if (user.getGender() != null) {
+            out.writeVarLong(user.getGender());
+        }
+        if (user.getStatus() != null) {
+            out.writeVarLong(user.getStatus());
+        }
+        if (user.getCreateTime() != null) {
+            out.writeVarLong(user.getCreateTime().getTime());
+        }
+        if (user.getUpdateTime() != null) {
+            out.writeVarLong(user.getUpdateTime().getTime());
+        }
+        if (user.getDeleted() != null) {
+            out.writeVarLong(user.getDeleted());
+        }
+    }
+
+    private User readUser(Input in) {
+        int fields = (int) in.readVarLong();
+        User user = new User();
+        if ((fields & FIELD_ID) != 0) {
+            user.setId(in.readVarLong());
+        }
+        if ((fields & FIELD_USERNAME) != 0) {
+            user.setUsername(in.readString());
+        }
+        if ((fields & FIELD_PASSWORD) != 0) {
+            user.setPassword(in.readString());
+        }
+        if ((fields & FIELD_NICKNAME) != 0) {
+            user.setNickname(in.readString());
+        }
+        if ((fields & FIELD_EMAIL) != 0) {
+            user.setEmail(in.readString());
+        }
+        if ((fields & FIELD_PHONE) != 0) {
+            user.setPhone(in.readString());
+        }
+        if ((fields & FIELD_GENDER) != 0) {
+            user.setGender((int) in.readVarLong());
+        }
+        if ((fields & FIELD_STATUS) != 0) {
+            user.setStatus((int) in.readVarLong());
+        }
+        if ((fields & FIELD_CREATE_TIME) != 0) {
+            user.setCreateTime(new Date(in.readVarLong()));
+        }
+        if ((fields & FIELD_UPDATE_TIME) != 0) {
+            user.setUpdateTime(new Date(in.readVarLong()));
+        }
+        if ((fields & FIELD_DELETED) != 0) {
+            user.setDeleted((int) in.readVarLong());
+        }
+        return user;
+    }
+
+    private static byte[] deflate(byte[] bytes, int offset) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes, offset, bytes.length - offset);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int offset) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 3);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && inflater.needsInput()) {
+                    throw new SerializationException("压缩数据不完整");
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new SerializationException("无法解压缓存数据", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 写缓冲区：变长整数使用ZigZag + 7位分组编码，字符串为长度前缀的UTF-8
+     */
+    private static class Output extends ByteArrayOutputStream {
+
+        Output() {
+            super(128);
+        }
+
+        void writeVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                write((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            write((int) zigzag);
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * 读缓冲区
+     */
+    private static class Input {
+        private final byte[] bytes;
+        private int position;
+
+        Input(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        byte read() {
+            if (position >= bytes.length) {
+                throw new SerializationException("缓存数据不完整");
+            }
+            return bytes[position++];
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = read();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new SerializationException("无效的变长整数");
+        }
+
+        byte[] readBytes(int length) {
+            if (length < 0 || position + length > bytes.length) {
+                throw new SerializationException("缓存数据不完整");
+            }
+            byte[] result = new byte[length];
+            System.arraycopy(bytes, position, result, 0, length);
+            position += length;
+            return result;
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            if (length < 0 || position + length > bytes.length) {
+                throw new SerializationException("缓存数据不完整");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
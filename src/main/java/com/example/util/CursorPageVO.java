@@ -0,0 +1,26 @@
+package com.example.util;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 游标分页结果封装类
+ */
+@Data
+public class CursorPageVO<T> {
+    /**
+     * 当前页数据
+     */
+    private List<T> list;
+    
+    /**
+     * 下一页游标，没有下一页时为null
+     */
+    private String nextCursor;
+    
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasNext;
+}
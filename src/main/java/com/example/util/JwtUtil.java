@@ -3,15 +3,23 @@ package com.example.util;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * JWT工具类，用于生成、验证和解析token
@@ -21,11 +29,49 @@ import java.util.Map;
 public class JwtUtil {
 
     /**
-     * JWT密钥
+     * 自包含token中的用户ID声明
+     */
+    public static final String CLAIM_USER_ID = "uid";
+
+    /**
+     * 签发时的用户Token代数声明，小于用户当前代数的token已被强制失效
+     */
+    public static final String CLAIM_EPOCH = "gen";
+
+    /**
+     * 自包含token中的用户状态声明
+     */
+    public static final String CLAIM_STATUS = "st";
+
+    /**
+     * 自包含token中的权限列表声明
+     */
+    public static final String CLAIM_AUTHORITIES = "auth";
+
+    /**
+     * JWT密钥（当前签名密钥）
      */
     @Value("${jwt.secret}")
     private String secret;
 
+    /**
+     * 当前签名密钥的kid，写入token头部用于验签时选择密钥
+     */
+    @Value("${jwt.key-id:default}")
+    private String keyId;
+
+    /**
+     * 轮换前的旧密钥，仅用于验签，格式：kid:secret,kid:secret
+     */
+    @Value("${jwt.previous-keys:}")
+    private String previousKeys;
+
+    /**
+     * 是否签发自包含token（携带用户ID、状态和权限，过滤器无需查询用户）
+     */
+    @Value("${jwt.self-contained:false}")
+    private boolean selfContained;
+
     /**
      * JWT过期时间（毫秒）
      */
@@ -39,17 +85,77 @@ public class JwtUtil {
     private long refreshExpire;
 
     /**
-     * 获取签名密钥
+     * 密钥环：kid -> 签名密钥，启动时派生一次，之后只读
+     */
+    private Map<String, SecretKey> keyRing;
+
+    /**
+     * 当前签名密钥
+     */
+    private SecretKey activeKey;
+
+    /**
+     * 预构建的解析器，JwtParser不可变且线程安全，可在所有请求间复用
+     */
+    private JwtParser parser;
+
+    /**
+     * 启动时派生密钥环并构建解析器，避免每次签发/解析都重复解码密钥
+     */
+    @PostConstruct
+    public void init() {
+        Map<String, SecretKey> keys = new LinkedHashMap<>();
+        activeKey = deriveKey(secret);
+        keys.put(keyId, activeKey);
+
+        if (StringUtils.hasText(previousKeys)) {
+            for (String entry : previousKeys.split(",")) {
+                String[] parts = entry.trim().split(":", 2);
+                if (parts.length != 2 || !StringUtils.hasText(parts[0]) || !StringUtils.hasText(parts[1])) {
+                    throw new IllegalStateException("jwt.previous-keys格式错误，应为 kid:secret");
+                }
+                if (keys.containsKey(parts[0])) {
+                    throw new IllegalStateException("jwt.previous-keys中存在重复的kid: " + parts[0]);
+                }
+                keys.put(parts[0], deriveKey(parts[1]));
+            }
+        }
+        keyRing = Collections.unmodifiableMap(keys);
+
+        parser = Jwts.parser()
+                .keyLocator(new LocatorAdapter<Key>() {
+                    @Override
+                    protected Key locate(JwsHeader header) {
+                        String kid = header.getKeyId();
+                        // 未携带kid的token（轮换前签发）使用当前密钥验签
+                        if (kid == null) {
+                            return activeKey;
+                        }
+                        SecretKey key = keyRing.get(kid);
+                        if (key == null) {
+                            throw new UnsupportedJwtException("未知的密钥ID: " + kid);
+                        }
+                        return key;
+                    }
+                })
+                .build();
+
+        log.info("JWT密钥环已加载，当前kid: {}，可验签密钥数: {}", keyId, keyRing.size());
+    }
+
+    /**
+     * 由配置的密钥字符串派生签名密钥
+     * @param rawSecret 密钥字符串
      * @return 签名密钥
      */
-    private SecretKey getSigningKey() {
+    private SecretKey deriveKey(String rawSecret) {
         byte[] keyBytes;
         try {
-            keyBytes = Decoders.BASE64.decode(secret);
+            keyBytes = Decoders.BASE64.decode(rawSecret);
             log.debug("使用Base64编码的JWT密钥");
         } catch (Exception e) {
             log.warn("JWT密钥不是有效的Base64编码，将使用明文密钥。建议配置Base64编码的32字节密钥。");
-             keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+             keyBytes = rawSecret.getBytes(StandardCharsets.UTF_8);
         }
         
         // 检查密钥长度，HS256至少需要256位（32字节）
@@ -84,10 +190,26 @@ public class JwtUtil {
                 .subject(subject)
                 .issuedAt(now)
                 .expiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .header().keyId(keyId).and()
+                .signWith(activeKey, Jwts.SIG.HS256)
                 .compact();
     }
 
+    /**
+     * 构建自包含token的用户声明
+     * @param userId 用户ID
+     * @param status 用户状态
+     * @param authorities 权限列表
+     * @return 自定义声明
+     */
+    public Map<String, Object> buildUserClaims(Long userId, Integer status, Collection<String> authorities) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(CLAIM_USER_ID, userId);
+        claims.put(CLAIM_STATUS, status);
+        claims.put(CLAIM_AUTHORITIES, new ArrayList<>(authorities));
+        return claims;
+    }
+
     /**
      * 生成刷新token
      * @param subject 主题，通常为用户名
@@ -97,11 +219,14 @@ public class JwtUtil {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + refreshExpire);
 
+        // jti保证同一秒内签发的刷新令牌也互不相同，轮换后旧令牌一定失效
         return Jwts.builder()
+                .id(UUID.randomUUID().toString())
                 .subject(subject)
                 .issuedAt(now)
                 .expiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .header().keyId(keyId).and()
+                .signWith(activeKey, Jwts.SIG.HS256)
                 .compact();
     }
 
@@ -112,13 +237,11 @@ public class JwtUtil {
      */
     public Claims parseToken(String token) {
         try {
-            return Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token)
+            return parser.parseSignedClaims(token)
                     .getPayload();
         } catch (JwtException e) {
-            log.error("JWT解析异常: {}", e.getMessage());
+            // 由调用方决定是否记录（认证过滤器中按调用点限流输出）
+            log.debug("JWT解析异常: {}", e.getMessage());
             throw new IllegalArgumentException("无效的token");
         }
     }
@@ -157,4 +280,8 @@ public class JwtUtil {
     public long getRefreshExpire() {
         return refreshExpire;
     }
+
+    public boolean isSelfContained() {
+        return selfContained;
+    }
 }
@@ -0,0 +1,106 @@
+package com.example.util;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 高频日志限流
+ * 按调用点限制每秒输出的日志条数，超出的日志被丢弃并计数，下一条输出的日志附带被省略的条数。
+ * 另提供按调用点 1/N 采样（trySample），输出量随事件量按比例变化，同时仍受每秒条数上限约束。
+ * 被省略的条数通过指标 log.suppressed{site} 暴露；调用点名称必须是代码中的常量，保证标签基数有限。
+ * 计数全部使用CAS，不加锁
+ */
+@Component
+public class LogRateLimiter {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 每个调用点每秒最多输出的日志条数
+     */
+    @Value("${app.logging.rate-limit-per-second:10}")
+    private int permitsPerSecond;
+
+    /**
+     * 采样模式下每N条输出1条
+     */
+    @Value("${app.logging.sample-every:100}")
+    private int sampleEvery;
+
+    private final ConcurrentHashMap<String, SiteLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * 申请输出一条日志
+     * @param site 调用点名称（常量）
+     * @return 允许输出时返回自上次输出以来被省略的条数（≥0）；被限流时返回-1
+     */
+    public long tryAcquire(String site) {
+        SiteLimiter limiter = limiters.get(site);
+        if (limiter == null) {
+            limiter = limiters.computeIfAbsent(site, this::createLimiter);
+        }
+        return limiter.tryAcquire(System.currentTimeMillis() / 1000, permitsPerSecond);
+    }
+
+    /**
+     * 按 1/N 采样申请输出一条日志，未被采中的计入省略条数；采中的仍受每秒条数上限约束
+     * @param site 调用点名称（常量）
+     * @return 允许输出时返回自上次输出以来被省略的条数（≥0）；未采中或被限流时返回-1
+     */
+    public long trySample(String site) {
+        SiteLimiter limiter = limiters.get(site);
+        if (limiter == null) {
+            limiter = limiters.computeIfAbsent(site, this::createLimiter);
+        }
+        return limiter.trySample(System.currentTimeMillis() / 1000, permitsPerSecond, sampleEvery);
+    }
+
+    private SiteLimiter createLimiter(String site) {
+        SiteLimiter limiter = new SiteLimiter();
+        FunctionCounter.builder("log.suppressed", limiter.totalSuppressed, AtomicLong::get)
+                .tag("site", site)
+                .register(meterRegistry);
+        return limiter;
+    }
+
+    /**
+     * 单个调用点的固定窗口计数
+     */
+    private static class SiteLimiter {
+        private final AtomicLong window = new AtomicLong();
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicLong suppressed = new AtomicLong();
+        private final AtomicLong totalSuppressed = new AtomicLong();
+        private final AtomicLong sampleSequence = new AtomicLong();
+
+        long tryAcquire(long currentWindow, int permits) {
+            long previous = window.get();
+            if (previous != currentWindow && window.compareAndSet(previous, currentWindow)) {
+                count.set(0);
+            }
+            if (count.incrementAndGet() <= permits) {
+                return suppressed.getAndSet(0);
+            }
+            suppressed.incrementAndGet();
+            totalSuppressed.incrementAndGet();
+            return -1;
+        }
+
+        long trySample(long currentWindow, int permits, int every) {
+            if (every > 1 && sampleSequence.getAndIncrement() % every != 0) {
+                suppressed.incrementAndGet();
+                totalSuppressed.incrementAndGet();
+                return -1;
+            }
+            return tryAcquire(currentWindow, permits);
+        }
+    }
+}
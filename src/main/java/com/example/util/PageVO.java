@@ -0,0 +1,31 @@
+package com.example.util;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 分页结果封装类
+ */
+@Data
+public class PageVO<T> {
+    /**
+     * 当前页数据
+     */
+    private List<T> list;
+    
+    /**
+     * 总记录数，不统计总数时为null
+     */
+    private Long total;
+    
+    /**
+     * 实际使用的总数统计方式（exact/cached/estimated/none）
+     */
+    private String totalMode;
+    
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasNext;
+}
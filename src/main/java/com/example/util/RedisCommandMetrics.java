@@ -0,0 +1,54 @@
+package com.example.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Redis命令耗时统计
+ * 指标 redis.command.duration，标签 component（调用方）、command（命令或脚本名）、outcome（success/error），
+ * 标签值均为代码中的常量，不包含用户名等高基数值
+ */
+@Component
+public class RedisCommandMetrics {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 执行Redis命令并记录耗时
+     * @param component 调用方组件
+     * @param command 命令或脚本名
+     * @param action Redis操作
+     * @return 操作结果
+     */
+    public <T> T record(String component, String command, Supplier<T> action) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = action.get();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(Timer.builder("redis.command.duration")
+                    .tag("component", component)
+                    .tag("command", command)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * 执行无返回值的Redis命令并记录耗时
+     */
+    public void record(String component, String command, Runnable action) {
+        record(component, command, () -> {
+            action.run();
+            return null;
+        });
+    }
+}
@@ -1,15 +1,26 @@
 package com.example.util;
 
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 安全监控工具类
@@ -22,55 +33,162 @@ public class SecurityMonitorUtil {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Autowired
+    private RedisCommandMetrics redisCommandMetrics;
+
+    @Autowired
+    private LogRateLimiter logRateLimiter;
+
+    @Autowired
+    private TokenEpochRegistry tokenEpochRegistry;
+
+    /**
+     * Redis命令耗时指标中的组件名
+     */
+    private static final String METRICS_COMPONENT = "security_monitor";
+
     /**
      * 用户安全信息前缀
      */
     private static final String USER_SECURITY_PREFIX = "user_security:";
 
+    /**
+     * 异常访问记录前缀
+     */
+    private static final String ANOMALY_ACCESS_PREFIX = "anomaly_access:";
+
+    /**
+     * 用户安全信息保存时间（30天）
+     */
+    private static final long SECURITY_INFO_TTL_SECONDS = Duration.ofDays(30).getSeconds();
+
+    /**
+     * 异常访问记录保存时间（90天，用于审计）
+     */
+    private static final long ANOMALY_RECORD_TTL_SECONDS = Duration.ofDays(90).getSeconds();
+
+    /**
+     * 访问检查结果：正常访问
+     */
+    private static final long ACCESS_NORMAL = 1;
+
+    /**
+     * 访问检查结果：检测到IP或设备变化
+     */
+    private static final long ACCESS_ANOMALY = 2;
+
+    /**
+     * 访问异常检查脚本
+     * KEYS[1] 用户安全信息，KEYS[2] 异常访问记录
+     * ARGV[1] 当前IP，ARGV[2] 当前设备指纹，ARGV[3] 当前时间，ARGV[4] 用户ID
+     * 返回 {0} 首次访问，{1} 正常访问，{2, 上次IP, 上次设备指纹} 异常访问
+     * 正常访问时不写入last_access_time，由批量刷新任务异步写入
+     * 哈希中的值为原始UTF-8字符串；兼容旧版本以JSON字符串（带双引号）写入的值
+     */
+    private static final DefaultRedisScript<List> CHECK_ACCESS_SCRIPT = new DefaultRedisScript<>("""
+            local function changed(stored, current)
+              return stored and stored ~= current and stored ~= '"' .. current .. '"'
+            end
+            local info = redis.call('HMGET', KEYS[1], 'last_ip', 'last_device_fingerprint')
+            local lastIp, lastDevice = info[1], info[2]
+            if not lastIp and not lastDevice then
+              redis.call('HSET', KEYS[1], 'last_ip', ARGV[1], 'last_device_fingerprint', ARGV[2], 'last_access_time', ARGV[3])
+              redis.call('EXPIRE', KEYS[1], %1$d)
+              return {0}
+            end
+            if changed(lastIp, ARGV[1]) or changed(lastDevice, ARGV[2]) then
+              redis.call('HSET', KEYS[2], 'user_id', ARGV[4], 'last_ip', lastIp or '', 'current_ip', ARGV[1],
+                'last_device', lastDevice or '', 'current_device', ARGV[2], 'timestamp', ARGV[3])
+              redis.call('EXPIRE', KEYS[2], %2$d)
+              redis.call('HSET', KEYS[1], 'last_ip', ARGV[1], 'last_device_fingerprint', ARGV[2], 'last_access_time', ARGV[3])
+              redis.call('EXPIRE', KEYS[1], %1$d)
+              return {2, lastIp or false, lastDevice or false}
+            end
+            return {1}
+            """.formatted(SECURITY_INFO_TTL_SECONDS, ANOMALY_RECORD_TTL_SECONDS), List.class);
+
+    /**
+     * 待写入的最后访问时间：用户ID -> 最新访问时间，每个用户只保留最新值
+     */
+    private final ConcurrentHashMap<Long, Long> pendingAccessTimes = new ConcurrentHashMap<>();
+
     /**
      * 登录尝试前缀（防暴力破解）
      */
     private static final String LOGIN_ATTEMPT_PREFIX = "login_attempt:";
 
     /**
-     * 最大登录尝试次数
+     * 登录限流检查脚本（滑动窗口计数，按前后两个固定窗口加权估算）
+     * KEYS 每个维度两个：当前窗口计数key、上一窗口计数key
+     * ARGV[1] 模式（0 仅检查，1 记录一次失败并检查），ARGV[2] 当前时间（毫秒），
+     * 之后每个维度两个参数：窗口长度（毫秒）、窗口内最大尝试次数
+     * 返回 {是否锁定, 建议重试等待毫秒数}
      */
-    private static final int MAX_LOGIN_ATTEMPTS = 5;
+    private static final DefaultRedisScript<List> LOGIN_THROTTLE_SCRIPT = new DefaultRedisScript<>("""
+            local record = ARGV[1] == '1'
+            local now = tonumber(ARGV[2])
+            local blocked, retryAfter = 0, 0
+            for i = 1, #KEYS / 2 do
+              local currentKey, previousKey = KEYS[2 * i - 1], KEYS[2 * i]
+              local window = tonumber(ARGV[2 * i + 1])
+              local maxAttempts = tonumber(ARGV[2 * i + 2])
+              local elapsed = now % window
+              local current = tonumber(redis.call('GET', currentKey) or '0')
+              if record then
+                current = redis.call('INCR', currentKey)
+                if current == 1 then
+                  redis.call('PEXPIRE', currentKey, window * 2)
+                end
+              end
+              local previous = tonumber(redis.call('GET', previousKey) or '0')
+              local estimated = previous * (window - elapsed) / window + current
+              if estimated >= maxAttempts then
+                blocked = 1
+                retryAfter = math.max(retryAfter, window - elapsed)
+              end
+            end
+            return {blocked, retryAfter}
+            """, List.class);
 
     /**
-     * 登录尝试锁定时间（分钟）
+     * 同一用户名在窗口内的最大登录失败次数
      */
-    private static final int LOGIN_LOCK_TIME_MINUTES = 15;
+    @Value("${security.login.user-max-attempts:5}")
+    private int userMaxAttempts;
+
+    /**
+     * 用户名维度的统计窗口
+     */
+    @Value("${security.login.user-window:15m}")
+    private Duration userWindow;
+
+    /**
+     * 同一IP在窗口内的最大登录失败次数
+     */
+    @Value("${security.login.ip-max-attempts:50}")
+    private int ipMaxAttempts;
+
+    /**
+     * IP维度的统计窗口
+     */
+    @Value("${security.login.ip-window:15m}")
+    private Duration ipWindow;
 
     /**
      * 获取客户端真实IP地址
+     * X-Forwarded-For由Tomcat的RemoteIpValve处理（server.forward-headers-strategy=native），
+     * 只信任来自内网代理（如前端nginx）的转发头，客户端伪造的请求头不会改变这里的结果，可作为限流key
      * @param request HTTP请求
      * @return 客户端真实IP
      */
     public String getClientIp(HttpServletRequest request) {
-        String ip = request.getHeader("X-Forwarded-For");
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("Proxy-Client-IP");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("WL-Proxy-Client-IP");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("HTTP_CLIENT_IP");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("HTTP_X_FORWARDED_FOR");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getRemoteAddr();
-        }
-        
-        // 如果有多级代理，取第一个IP
-        if (ip != null && ip.contains(",")) {
-            ip = ip.split(",")[0].trim();
-        }
-        
-        return ip;
+        return request.getRemoteAddr();
     }
 
     /**
@@ -97,6 +215,7 @@ public class SecurityMonitorUtil {
 
     /**
      * 检查用户登录/访问是否有异常（IP或设备变化）
+     * 比较与更新在同一个Lua脚本中原子完成，每次检查只需一次Redis往返
      * @param userId 用户ID
      * @param request HTTP请求
      * @return 是否检测到异常访问
@@ -105,38 +224,39 @@ public class SecurityMonitorUtil {
         try {
             String currentIp = getClientIp(request);
             String currentDeviceFingerprint = generateDeviceFingerprint(request);
+            long now = System.currentTimeMillis();
             
             String key = USER_SECURITY_PREFIX + userId;
-            Map<Object, Object> securityInfo = redisTemplate.opsForHash().entries(key);
+            String anomalyKey = ANOMALY_ACCESS_PREFIX + userId + ":" + now;
+            List<Object> result = redisCommandMetrics.record(METRICS_COMPONENT, "check_access", () ->
+                    stringRedisTemplate.execute(CHECK_ACCESS_SCRIPT, Arrays.asList(key, anomalyKey),
+                            currentIp, currentDeviceFingerprint, String.valueOf(now), String.valueOf(userId)));
             
-            if (securityInfo.isEmpty()) {
-                // 首次登录，保存安全信息
-                saveSecurityInfo(userId, currentIp, currentDeviceFingerprint);
+            if (result == null || result.isEmpty()) {
                 return false;
             }
             
-            String lastIp = (String) securityInfo.get("last_ip");
-            String lastDeviceFingerprint = (String) securityInfo.get("last_device_fingerprint");
+            long verdict = ((Number) result.get(0)).longValue();
+            if (verdict == ACCESS_NORMAL) {
+                // 更新最后访问时间（缓冲后批量写入）
+                updateLastAccessTime(userId, now);
+                return false;
+            }
             
-            boolean ipChanged = lastIp != null && !lastIp.equals(currentIp);
-            boolean deviceChanged = lastDeviceFingerprint != null && !lastDeviceFingerprint.equals(currentDeviceFingerprint);
+            // 脚本已写入本次访问时间，丢弃尚未刷新的旧值
+            pendingAccessTimes.remove(userId);
             
-            if (ipChanged || deviceChanged) {
-                log.warn("检测到异常访问，用户ID: {}，IP变化: {} -> {}，设备变化: {} -> {}", 
-                        userId, lastIp, currentIp, lastDeviceFingerprint, currentDeviceFingerprint);
-                
-                // 记录异常访问
-                recordAnomalyAccess(userId, lastIp, currentIp, lastDeviceFingerprint, currentDeviceFingerprint);
-                
-                // 更新为新的安全信息
-                saveSecurityInfo(userId, currentIp, currentDeviceFingerprint);
-                
+            if (verdict == ACCESS_ANOMALY) {
+                String lastIp = (String) result.get(1);
+                String lastDeviceFingerprint = (String) result.get(2);
+                long suppressed = logRateLimiter.tryAcquire("security.access.anomaly");
+                if (suppressed >= 0) {
+                    log.warn("检测到异常访问，用户ID: {}，IP变化: {} -> {}，设备变化: {} -> {}（已省略{}条）",
+                            userId, lastIp, currentIp, lastDeviceFingerprint, currentDeviceFingerprint, suppressed);
+                }
                 return true;
             }
             
-            // 更新最后访问时间
-            updateLastAccessTime(userId);
-            
             return false;
         } catch (Exception e) {
             log.error("检查访问异常失败，用户ID: {}", userId, e);
@@ -145,93 +265,135 @@ public class SecurityMonitorUtil {
     }
 
     /**
-     * 保存用户安全信息
+     * 更新最后访问时间
+     * 只记录到内存缓冲区，同一用户在一个刷新周期内的多次访问合并为一次写入
      * @param userId 用户ID
-     * @param ip IP地址
-     * @param deviceFingerprint 设备指纹
+     * @param accessTime 访问时间
      */
-    private void saveSecurityInfo(Long userId, String ip, String deviceFingerprint) {
-        String key = USER_SECURITY_PREFIX + userId;
-        Map<String, String> securityInfo = new HashMap<>();
-        securityInfo.put("last_ip", ip);
-        securityInfo.put("last_device_fingerprint", deviceFingerprint);
-        securityInfo.put("last_access_time", String.valueOf(System.currentTimeMillis()));
-        
-        redisTemplate.opsForHash().putAll(key, securityInfo);
-        redisTemplate.expire(key, Duration.ofDays(30)); // 保存30天
+    private void updateLastAccessTime(Long userId, long accessTime) {
+        pendingAccessTimes.merge(userId, accessTime, Math::max);
     }
 
     /**
-     * 更新最后访问时间
-     * @param userId 用户ID
+     * 将缓冲的最后访问时间以管道方式批量写入Redis
      */
-    private void updateLastAccessTime(Long userId) {
-        String key = USER_SECURITY_PREFIX + userId;
-        redisTemplate.opsForHash().put(key, "last_access_time", String.valueOf(System.currentTimeMillis()));
+    @Scheduled(fixedDelayString = "${security.monitor.access-flush-interval-ms:5000}")
+    public void flushLastAccessTimes() {
+        if (pendingAccessTimes.isEmpty()) {
+            return;
+        }
+        
+        Map<Long, Long> batch = new HashMap<>();
+        for (Long userId : pendingAccessTimes.keySet()) {
+            Long accessTime = pendingAccessTimes.remove(userId);
+            if (accessTime != null) {
+                batch.put(userId, accessTime);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        
+        try {
+            redisCommandMetrics.record(METRICS_COMPONENT, "flush_access_time", () -> stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    for (Map.Entry<Long, Long> entry : batch.entrySet()) {
+                        String key = USER_SECURITY_PREFIX + entry.getKey();
+                        operations.opsForHash().put(key, "last_access_time", String.valueOf(entry.getValue()));
+                        operations.expire(key, Duration.ofSeconds(SECURITY_INFO_TTL_SECONDS));
+                    }
+                    return null;
+                }
+            }));
+            log.debug("已批量写入 {} 个用户的最后访问时间", batch.size());
+        } catch (Exception e) {
+            // 写入失败时放回缓冲区，等待下次刷新（保留更新的值）
+            batch.forEach(this::updateLastAccessTime);
+            log.error("批量写入最后访问时间失败，用户数: {}", batch.size(), e);
+        }
     }
 
     /**
-     * 记录异常访问
-     * @param userId 用户ID
-     * @param lastIp 上次IP
-     * @param currentIp 当前IP
-     * @param lastDevice 上次设备
-     * @param currentDevice 当前设备
+     * 应用关闭前写入缓冲区中剩余的访问时间
      */
-    private void recordAnomalyAccess(Long userId, String lastIp, String currentIp, 
-                                     String lastDevice, String currentDevice) {
-        String anomalyKey = "anomaly_access:" + userId + ":" + System.currentTimeMillis();
-        Map<String, String> anomalyInfo = new HashMap<>();
-        anomalyInfo.put("user_id", String.valueOf(userId));
-        anomalyInfo.put("last_ip", lastIp);
-        anomalyInfo.put("current_ip", currentIp);
-        anomalyInfo.put("last_device", lastDevice);
-        anomalyInfo.put("current_device", currentDevice);
-        anomalyInfo.put("timestamp", String.valueOf(System.currentTimeMillis()));
-        
-        redisTemplate.opsForHash().putAll(anomalyKey, anomalyInfo);
-        redisTemplate.expire(anomalyKey, Duration.ofDays(90)); // 保存90天用于审计
+    @PreDestroy
+    public void shutdown() {
+        flushLastAccessTimes();
     }
 
     /**
-     * 检查登录尝试次数（防暴力破解）
+     * 检查登录是否被限流（防暴力破解），用户名和IP两个维度在一次Redis调用中检查
      * @param username 用户名
-     * @return 是否超过最大尝试次数
+     * @param clientIp 客户端IP
+     * @return 限流状态
      */
-    public boolean isLoginBlocked(String username) {
-        String key = LOGIN_ATTEMPT_PREFIX + username;
-        Integer attempts = (Integer) redisTemplate.opsForValue().get(key);
-        return attempts != null && attempts >= MAX_LOGIN_ATTEMPTS;
+    public LoginThrottleStatus checkLoginThrottle(String username, String clientIp) {
+        return executeLoginThrottle(username, clientIp, false);
     }
 
     /**
-     * 记录登录尝试失败
+     * 记录登录尝试失败，计数与限流检查原子完成
      * @param username 用户名
+     * @param clientIp 客户端IP
+     * @return 记录本次失败后的限流状态
      */
-    public void recordLoginAttempt(String username) {
-        String key = LOGIN_ATTEMPT_PREFIX + username;
-        Integer attempts = (Integer) redisTemplate.opsForValue().get(key);
-        
-        if (attempts == null) {
-            attempts = 1;
-        } else {
-            attempts++;
-        }
-        
-        redisTemplate.opsForValue().set(key, attempts, LOGIN_LOCK_TIME_MINUTES, TimeUnit.MINUTES);
-        
-        if (attempts >= MAX_LOGIN_ATTEMPTS) {
-            log.warn("用户 {} 登录尝试次数过多，已被锁定 {} 分钟", username, LOGIN_LOCK_TIME_MINUTES);
+    public LoginThrottleStatus recordLoginAttempt(String username, String clientIp) {
+        LoginThrottleStatus status = executeLoginThrottle(username, clientIp, true);
+        if (status.isBlocked()) {
+            long suppressed = logRateLimiter.tryAcquire("security.login.blocked");
+            if (suppressed >= 0) {
+                log.warn("用户 {}（IP: {}）登录尝试次数过多，已被锁定 {} 秒（已省略{}条）",
+                        username, clientIp, status.getRetryAfterSeconds(), suppressed);
+            }
         }
+        return status;
     }
 
     /**
-     * 清除登录尝试记录（登录成功时调用）
+     * 清除登录尝试记录（登录成功时调用），只清除用户名维度，IP维度继续累计
      * @param username 用户名
      */
     public void clearLoginAttempts(String username) {
-        String key = LOGIN_ATTEMPT_PREFIX + username;
-        redisTemplate.delete(key);
+        long now = System.currentTimeMillis();
+        redisCommandMetrics.record(METRICS_COMPONENT, "clear_login_attempts", () -> stringRedisTemplate.delete(Arrays.asList(
+                buildLoginAttemptKey("user", username, userWindow, now, 0),
+                buildLoginAttemptKey("user", username, userWindow, now, 1))));
+    }
+
+    private LoginThrottleStatus executeLoginThrottle(String username, String clientIp, boolean record) {
+        long now = System.currentTimeMillis();
+        List<String> keys = Arrays.asList(
+                buildLoginAttemptKey("user", username, userWindow, now, 0),
+                buildLoginAttemptKey("user", username, userWindow, now, 1),
+                buildLoginAttemptKey("ip", clientIp, ipWindow, now, 0),
+                buildLoginAttemptKey("ip", clientIp, ipWindow, now, 1));
+        List<Object> result = redisCommandMetrics.record(METRICS_COMPONENT, record ? "login_throttle_record" : "login_throttle_check",
+                () -> stringRedisTemplate.execute(LOGIN_THROTTLE_SCRIPT, keys,
+                        record ? "1" : "0", String.valueOf(now),
+                        String.valueOf(userWindow.toMillis()), String.valueOf(userMaxAttempts),
+                        String.valueOf(ipWindow.toMillis()), String.valueOf(ipMaxAttempts)));
+        
+        if (result == null || result.size() < 2) {
+            return new LoginThrottleStatus(false, 0);
+        }
+        boolean blocked = ((Number) result.get(0)).longValue() == 1;
+        long retryAfterMillis = ((Number) result.get(1)).longValue();
+        return new LoginThrottleStatus(blocked, (retryAfterMillis + 999) / 1000);
+    }
+
+    /**
+     * 构建登录尝试计数key
+     * @param dimension 维度（user/ip）
+     * @param value 维度值
+     * @param window 窗口长度
+     * @param now 当前时间
+     * @param windowsAgo 0 当前窗口，1 上一窗口
+     */
+    private String buildLoginAttemptKey(String dimension, String value, Duration window, long now, int windowsAgo) {
+        long bucket = now / window.toMillis() - windowsAgo;
+        return LOGIN_ATTEMPT_PREFIX + dimension + ":" + value + ":" + bucket;
     }
 
     /**
@@ -240,13 +402,18 @@ public class SecurityMonitorUtil {
      */
     public void invalidateUserTokens(Long userId) {
         try {
-            // 删除用户的Refresh Token
-            String refreshTokenKey = "refresh_token:" + userId;
-            redisTemplate.delete(refreshTokenKey);
+            // 更新Token代数：所有节点上此前签发的Access Token随即失效
+            tokenEpochRegistry.bump(userId);
             
-            // 删除用户安全信息
+            // 删除用户的Refresh Token和用户安全信息（一条DEL），并丢弃尚未写入的访问时间
+            String refreshTokenKey = "refresh_token:" + userId;
             String securityKey = USER_SECURITY_PREFIX + userId;
-            redisTemplate.delete(securityKey);
+            pendingAccessTimes.remove(userId);
+            redisCommandMetrics.record(METRICS_COMPONENT, "invalidate_tokens",
+                    () -> redisTemplate.delete(Arrays.asList(refreshTokenKey, securityKey)));
+            
+            // 清除本地已验签Token缓存，下次请求重新验签
+            verifiedTokenCache.evictUser(userId);
             
             log.warn("已强制使用户 {} 的所有Token失效", userId);
         } catch (Exception e) {
@@ -254,6 +421,23 @@ public class SecurityMonitorUtil {
         }
     }
 
+    /**
+     * 登录限流状态
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class LoginThrottleStatus {
+        /**
+         * 是否已被锁定
+         */
+        private final boolean blocked;
+
+        /**
+         * 建议重试等待时间（秒）
+         */
+        private final long retryAfterSeconds;
+    }
+
     /**
      * 获取用户最后一次正常访问的信息
      * @param userId 用户ID
@@ -261,6 +445,7 @@ public class SecurityMonitorUtil {
      */
     public Map<Object, Object> getUserSecurityInfo(Long userId) {
         String key = USER_SECURITY_PREFIX + userId;
-        return redisTemplate.opsForHash().entries(key);
+        return redisCommandMetrics.record(METRICS_COMPONENT, "security_info",
+                () -> stringRedisTemplate.opsForHash().entries(key));
     }
 }
\ No newline at end of file
@@ -0,0 +1,375 @@
+package com.example.util;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户Token代数（epoch）注册表
+ * 签发的Token携带签发时的用户代数，强制下线时代数更新，代数小于当前值的Token一律失效。
+ * 代数取强制下线时的Redis时间（毫秒，且大于原值），只增不减；每个用户一个Redis key，
+ * 保留到此前签发的Access Token全部过期为止，之后key自动过期、本地条目被清理，不会随下线次数无限增长。
+ * 签发Token时读取Redis中的当前值；认证过滤器每次请求只查本地快照（long -> long 开放寻址表，写时复制）。
+ * 变更通过Redis发布订阅通知各节点，并记入按时间裁剪的Redis Stream，各节点定期从上次读到的位置增量同步兜底
+ */
+@Slf4j
+@Component
+public class TokenEpochRegistry implements MessageListener {
+
+    /**
+     * 用户代数key前缀：token_epoch:{userId} -> 当前代数（从未强制下线或已过保留期的用户没有key，代数为0）
+     */
+    private static final String TOKEN_EPOCH_PREFIX = "token_epoch:";
+
+    /**
+     * 代数变更流，条目字段 u（用户ID）、e（代数），只保留保留期内的条目
+     */
+    private static final String TOKEN_EPOCH_STREAM = "token_epoch:changes";
+
+    /**
+     * 旧版本的代数哈希（用户ID -> 递增计数），启动时迁移后删除
+     */
+    private static final String LEGACY_TOKEN_EPOCH_KEY = "token_epoch";
+
+    /**
+     * 代数变更通知频道，消息格式 userId:epoch
+     */
+    private static final String TOKEN_EPOCH_CHANNEL = "token_epoch:changed";
+
+    /**
+     * Redis命令耗时指标中的组件名
+     */
+    private static final String METRICS_COMPONENT = "token_epoch";
+
+    /**
+     * 各节点与Redis之间允许的时钟偏差，计入保留期
+     */
+    private static final long CLOCK_SKEW_MILLIS = 300_000;
+
+    /**
+     * 每次增量同步读取的最大条目数
+     */
+    private static final int RESYNC_BATCH_SIZE = 1000;
+
+    /**
+     * 更新代数、记入变更流并发布通知（一次往返）
+     * KEYS[1] 用户代数key，KEYS[2] 变更流，ARGV[1] 用户ID，ARGV[2] 通知频道，ARGV[3] 保留期（毫秒）
+     * 返回新的代数
+     */
+    private static final DefaultRedisScript<Long> BUMP_SCRIPT = new DefaultRedisScript<>("""
+            local time = redis.call('TIME')
+            local epoch = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local current = tonumber(redis.call('GET', KEYS[1]) or '0')
+            if epoch <= current then
+              epoch = current + 1
+            end
+            redis.call('SET', KEYS[1], epoch, 'PX', ARGV[3])
+            redis.call('XADD', KEYS[2], 'MINID', '~', epoch - tonumber(ARGV[3]), '*', 'u', ARGV[1], 'e', epoch)
+            redis.call('PUBLISH', ARGV[2], ARGV[1] .. ':' .. epoch)
+            return epoch
+            """, Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private RedisCommandMetrics redisCommandMetrics;
+
+    /**
+     * Access Token有效期，代数在此之后（加上时钟偏差）不再需要保留
+     */
+    @Value("${jwt.expire}")
+    private long accessTokenExpire;
+
+    /**
+     * 本地代数快照，读无锁；写入时复制后整体替换
+     */
+    private volatile EpochTable epochs = EpochTable.EMPTY;
+
+    /**
+     * 变更流中已同步到的最后一个条目ID
+     */
+    private volatile String lastStreamId;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(TOKEN_EPOCH_CHANNEL));
+        migrateLegacyEpochs();
+        resync();
+    }
+
+    /**
+     * 获取用户当前的Token代数（本地查找，不访问Redis），用于每次请求的校验
+     * @param userId 用户ID
+     * @return 当前代数，从未强制下线的用户为0
+     */
+    public long current(Long userId) {
+        return userId == null ? 0 : epochs.get(userId);
+    }
+
+    /**
+     * 获取用户当前的Token代数（读取Redis），用于签发Token，不受本节点漏收通知或同步延迟影响
+     * @param userId 用户ID
+     * @return 当前代数，从未强制下线的用户为0
+     */
+    public long load(Long userId) {
+        if (userId == null) {
+            return 0;
+        }
+        String value = redisCommandMetrics.record(METRICS_COMPONENT, "get",
+                () -> stringRedisTemplate.opsForValue().get(TOKEN_EPOCH_PREFIX + userId));
+        long epoch = value != null ? Long.parseLong(value) : 0;
+        if (epoch > 0) {
+            advance(userId, epoch);
+        }
+        // Redis中的key被淘汰时以本地快照为准，代数不回退
+        return Math.max(epoch, current(userId));
+    }
+
+    /**
+     * 使用户已签发的所有Token失效：更新代数并通知所有节点
+     * @param userId 用户ID
+     * @return 新的代数
+     */
+    public long bump(Long userId) {
+        Long epoch = redisCommandMetrics.record(METRICS_COMPONENT, "bump", () -> stringRedisTemplate.execute(
+                BUMP_SCRIPT, List.of(TOKEN_EPOCH_PREFIX + userId, TOKEN_EPOCH_STREAM),
+                String.valueOf(userId), TOKEN_EPOCH_CHANNEL, String.valueOf(retentionMillis())));
+        if (epoch == null) {
+            throw new IllegalStateException("更新Token代数失败");
+        }
+        // 本节点立即生效，不等待通知回环
+        advance(userId, epoch);
+        return epoch;
+    }
+
+    /**
+     * 定期从变更流增量同步，弥补订阅断开期间丢失的通知，并清理已过保留期的本地条目
+     * 断开时间超过保留期时，期间丢失的变更已被裁剪，但受影响的Token也已全部过期，无需补齐
+     */
+    @Scheduled(fixedDelayString = "${app.token-epoch.resync-interval:10000}",
+            initialDelayString = "${app.token-epoch.resync-interval:10000}")
+    public void resync() {
+        try {
+            int synced = 0;
+            List<MapRecord<String, Object, Object>> records;
+            do {
+                String from = lastStreamId;
+                Range<String> range = from == null ? Range.unbounded()
+                        : Range.rightUnbounded(Range.Bound.inclusive(from));
+                records = redisCommandMetrics.record(METRICS_COMPONENT, "resync",
+                        () -> stringRedisTemplate.opsForStream().range(TOKEN_EPOCH_STREAM, range,
+                                Limit.limit().count(RESYNC_BATCH_SIZE)));
+                if (records == null) {
+                    break;
+                }
+                for (MapRecord<String, Object, Object> record : records) {
+                    String id = record.getId().getValue();
+                    // 范围包含上次读到的条目，跳过
+                    if (id.equals(from)) {
+                        continue;
+                    }
+                    Map<Object, Object> fields = record.getValue();
+                    advance(Long.parseLong(fields.get("u").toString()), Long.parseLong(fields.get("e").toString()));
+                    lastStreamId = id;
+                    synced++;
+                }
+            } while (records.size() >= RESYNC_BATCH_SIZE);
+            prune();
+            log.debug("Token代数已增量同步，变更数: {}", synced);
+        } catch (Exception e) {
+            log.warn("同步Token代数失败，继续使用本地快照: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 将旧版本哈希中的代数迁移为按用户保存（每个用户按强制下线处理一次），迁移后删除哈希
+     * 多个节点同时启动时可能重复迁移，只会多更新一次代数
+     */
+    private void migrateLegacyEpochs() {
+        try {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(LEGACY_TOKEN_EPOCH_KEY))
+                    || !"hash".equals(stringRedisTemplate.type(LEGACY_TOKEN_EPOCH_KEY).code())) {
+                return;
+            }
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(LEGACY_TOKEN_EPOCH_KEY);
+            for (Object userId : entries.keySet()) {
+                bump(Long.parseLong(userId.toString()));
+            }
+            stringRedisTemplate.delete(LEGACY_TOKEN_EPOCH_KEY);
+            log.info("已迁移旧版本Token代数，用户数: {}", entries.size());
+        } catch (Exception e) {
+            log.warn("迁移旧版本Token代数失败: {}", e.getMessage());
+        }
+    }
+
+    private long retentionMillis() {
+        return accessTokenExpire + CLOCK_SKEW_MILLIS;
+    }
+
+    /**
+     * 接收其他节点的代数变更通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(':');
+        if (separator <= 0) {
+            return;
+        }
+        try {
+            advance(Long.parseLong(body.substring(0, separator)), Long.parseLong(body.substring(separator + 1)));
+            log.debug("收到Token代数变更通知: {}", body);
+        } catch (NumberFormatException e) {
+            log.warn("无效的Token代数变更通知: {}", body);
+        }
+    }
+
+    /**
+     * 清理已过保留期的本地条目：代数即更新时间，此前签发的Token都已过期
+     */
+    private synchronized void prune() {
+        EpochTable current = epochs;
+        long cutoff = System.currentTimeMillis() - retentionMillis();
+        int[] retained = new int[1];
+        current.forEach((userId, epoch) -> {
+            if (epoch >= cutoff) {
+                retained[0]++;
+            }
+        });
+        if (retained[0] == current.size()) {
+            return;
+        }
+        EpochTable.Builder builder = new EpochTable.Builder(retained[0]);
+        current.forEach((userId, epoch) -> {
+            if (epoch >= cutoff) {
+                builder.putMax(userId, epoch);
+            }
+        });
+        epochs = builder.build();
+    }
+
+    /**
+     * 代数只增不减，乱序到达的旧通知被忽略
+     */
+    private synchronized void advance(long userId, long epoch) {
+        EpochTable current = epochs;
+        if (current.get(userId) >= epoch) {
+            return;
+        }
+        EpochTable.Builder builder = new EpochTable.Builder(current.size() + 1);
+        current.forEach(builder::putMax);
+        builder.putMax(userId, epoch);
+        epochs = builder.build();
+    }
+
+    /**
+     * 不可变的 long -> long 开放寻址表（线性探测），key为0的槽位表示空
+     * 只有保留期内被强制下线过的用户才有条目，规模远小于用户总数，写时整表复制的开销可以接受
+     */
+    private static final class EpochTable {
+
+        static final EpochTable EMPTY = new EpochTable(new long[2], new long[2], 0);
+
+        private final long[] keys;
+        private final long[] values;
+        private final int size;
+
+        private EpochTable(long[] keys, long[] values, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+
+        long get(long key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) {
+                    return values[i];
+                }
+                if (k == 0) {
+                    return 0;
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        void forEach(EntryConsumer consumer) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    consumer.accept(keys[i], values[i]);
+                }
+            }
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        interface EntryConsumer {
+            void accept(long key, long value);
+        }
+
+        /**
+         * 构建器：容量按装载因子0.5取2的幂，保证探测链很短且总有空槽
+         */
+        static final class Builder {
+            private final long[] keys;
+            private final long[] values;
+            private int size;
+
+            Builder(int expectedSize) {
+                int capacity = Integer.highestOneBit(Math.max(expectedSize, 1) * 2 - 1) << 1;
+                keys = new long[Math.max(capacity, 2)];
+                values = new long[keys.length];
+            }
+
+            void putMax(long key, long value) {
+                if (key == 0 || value <= 0) {
+                    return;
+                }
+                int mask = keys.length - 1;
+                for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                    if (keys[i] == key) {
+                        values[i] = Math.max(values[i], value);
+                        return;
+                    }
+                    if (keys[i] == 0) {
+                        keys[i] = key;
+                        values[i] = value;
+                        size++;
+                        return;
+                    }
+                }
+            }
+
+            EpochTable build() {
+                return new EpochTable(keys, values, size);
+            }
+        }
+    }
+}
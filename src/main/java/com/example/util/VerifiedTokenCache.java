@@ -0,0 +1,134 @@
+package com.example.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已验签Token缓存
+ * 以Token摘要为key缓存解析结果，同一Token在有效期内只需验签一次
+ */
+@Slf4j
+@Component
+public class VerifiedTokenCache {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 最大缓存条目数
+     */
+    @Value("${jwt.verified-cache.max-size:10000}")
+    private long maxSize;
+
+    private Cache<String, VerifiedToken> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+                        // 条目在Token的exp时刻过期
+                        long remainingMillis = value.getExpiresAt() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMillis, 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        // 命中/未命中次数通过 cache.gets{cache=jwt.verified} 指标暴露
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwt.verified");
+    }
+
+    /**
+     * 获取已验签的Token
+     * @param token JWT token
+     * @return 缓存的验签结果，不存在或已过期时返回null
+     */
+    public VerifiedToken get(String token) {
+        VerifiedToken verified = cache.getIfPresent(digest(token));
+        if (verified != null && verified.getExpiresAt() <= System.currentTimeMillis()) {
+            return null;
+        }
+        return verified;
+    }
+
+    /**
+     * 缓存验签结果
+     * @param token JWT token
+     * @param claims 解析出的声明
+     * @param userId 用户ID，用于按用户失效
+     */
+    public void put(String token, Claims claims, Long userId) {
+        Date expiration = claims.getExpiration();
+        if (expiration == null || userId == null) {
+            return;
+        }
+        cache.put(digest(token), new VerifiedToken(claims, userId, expiration.getTime()));
+    }
+
+    /**
+     * 移除某个用户的所有缓存Token
+     * @param userId 用户ID
+     */
+    public void evictUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        cache.asMap().values().removeIf(verified -> userId.equals(verified.getUserId()));
+        log.debug("已清除用户 {} 的已验签Token缓存", userId);
+    }
+
+    /**
+     * 计算Token的SHA-256摘要，避免在内存中以原文作为key
+     */
+    private String digest(String token) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = messageDigest.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    /**
+     * 已验签的Token信息
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class VerifiedToken {
+        private final Claims claims;
+        private final Long userId;
+        private final long expiresAt;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.util;
+
+import com.example.entity.User;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Date;
+
+/**
+ * Redis值序列化器对比：JSON（GenericJackson2JsonRedisSerializer）与 CompactRedisSerializer
+ * 输出缓存用户（含/不含密码）和“不存在”标记的编码大小，以及编码、解码的平均耗时。
+ * 不是单元测试，不会在 mvn test 中执行；编译测试类后直接运行 main 方法：
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) com.example.util.CompactRedisSerializerBenchmark
+ */
+public class CompactRedisSerializerBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 200_000;
+
+    private static final int ITERATIONS = 1_000_000;
+
+    public static void main(String[] args) {
+        User slim = new User();
+        slim.setId(123456L);
+        slim.setUsername("zhangsan_2024");
+        slim.setNickname("张三");
+        slim.setEmail("zhangsan@example.com");
+        slim.setPhone("13800138000");
+        slim.setGender(1);
+        slim.setStatus(1);
+        slim.setCreateTime(new Date());
+        slim.setUpdateTime(new Date());
+        slim.setDeleted(0);
+
+        User withPassword = new User();
+        BeanUtils.copyProperties(slim, withPassword);
+        withPassword.setPassword("$2a$10$abcdefghijklmnopqrstuvABCDEFGHIJKLMNOPQRSTUVWXYZ01234");
+
+        RedisSerializer<Object> json = new GenericJackson2JsonRedisSerializer();
+        RedisSerializer<Object> compact = new CompactRedisSerializer(1024);
+
+        System.out.println("== 编码大小（字节） ==");
+        System.out.printf("用户(含密码)   json=%d compact=%d%n",
+                json.serialize(withPassword).length, compact.serialize(withPassword).length);
+        System.out.printf("用户(不含密码) json=%d compact=%d%n",
+                json.serialize(slim).length, compact.serialize(slim).length);
+        System.out.printf("不存在标记     json=%d compact=%d%n",
+                json.serialize("__USER_NOT_FOUND__").length, compact.serialize("__USER_NOT_FOUND__").length);
+
+        System.out.println("== 平均耗时（纳秒） ==");
+        run("json    用户(含密码)", json, withPassword);
+        run("compact 用户(含密码)", compact, withPassword);
+        run("json    用户(不含密码)", json, slim);
+        run("compact 用户(不含密码)", compact, slim);
+    }
+
+    private static void run(String name, RedisSerializer<Object> serializer, User user) {
+        byte[] bytes = serializer.serialize(user);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            bytes = serializer.serialize(user);
+            serializer.deserialize(bytes);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            bytes = serializer.serialize(user);
+        }
+        long encodeNanos = System.nanoTime() - start;
+
+        Object value = null;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            value = serializer.deserialize(bytes);
+        }
+        long decodeNanos = System.nanoTime() - start;
+
+        // 校验解码结果，同时避免循环被优化掉
+        if (!(value instanceof User decoded) || !user.getUsername().equals(decoded.getUsername())) {
+            throw new IllegalStateException(name + " 解码结果不一致");
+        }
+        System.out.printf("%s encode=%.0f decode=%.0f%n", name,
+                encodeNanos / (double) ITERATIONS, decodeNanos / (double) ITERATIONS);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.util;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+import java.util.function.Supplier;
+
+/**
+ * JWT签发/解析吞吐对比：每次调用都解码密钥、构建解析器（改造前的做法）与 JwtUtil（启动时派生密钥环、复用解析器）
+ * 单线程、HS256，每种操作预热后跑多轮，输出每轮的 ops/s。
+ * 不是单元测试，不会在 mvn test 中执行；编译测试类后直接运行 main 方法：
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) com.example.util.JwtUtilBenchmark
+ */
+public class JwtUtilBenchmark {
+
+    private static final String SECRET = "vRBi7TvjIj9WTHK1stfBKRQRVZx/WwEX8MshyaxMRNc=";
+
+    private static final long EXPIRE = 3600000;
+
+    private static final int ROUNDS = 5;
+
+    private static final int OPERATIONS_PER_ROUND = 300_000;
+
+    public static void main(String[] args) {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "keyId", "k1");
+        ReflectionTestUtils.setField(jwtUtil, "previousKeys", "");
+        ReflectionTestUtils.setField(jwtUtil, "expire", EXPIRE);
+        ReflectionTestUtils.setField(jwtUtil, "refreshExpire", EXPIRE * 24);
+        jwtUtil.init();
+
+        String token = jwtUtil.generateToken("zhangsan");
+
+        run("改造前 签发", () -> signPerCall("zhangsan"));
+        run("JwtUtil 签发", () -> jwtUtil.generateToken("zhangsan"));
+        run("改造前 解析", () -> parsePerCall(token));
+        run("JwtUtil 解析", () -> jwtUtil.parseToken(token));
+    }
+
+    /**
+     * 改造前：每次签发都重新解码密钥
+     */
+    private static String signPerCall(String subject) {
+        Date now = new Date();
+        return Jwts.builder()
+                .subject(subject)
+                .issuedAt(now)
+                .expiration(new Date(now.getTime() + EXPIRE))
+                .signWith(deriveKey(), Jwts.SIG.HS256)
+                .compact();
+    }
+
+    /**
+     * 改造前：每次解析都重新解码密钥并构建解析器
+     */
+    private static Object parsePerCall(String token) {
+        return Jwts.parser()
+                .verifyWith(deriveKey())
+                .build()
+                .parseSignedClaims(token)
+                .getPayload();
+    }
+
+    private static SecretKey deriveKey() {
+        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET));
+    }
+
+    private static void run(String name, Supplier<Object> operation) {
+        Object last = null;
+        for (int i = 0; i < OPERATIONS_PER_ROUND; i++) {
+            last = operation.get();
+        }
+
+        StringBuilder rounds = new StringBuilder();
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS_PER_ROUND; i++) {
+                last = operation.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            rounds.append(String.format(" %.0fk", OPERATIONS_PER_ROUND / seconds / 1000));
+        }
+        // 使用结果，避免循环被优化掉
+        if (last == null) {
+            throw new IllegalStateException(name + " 没有结果");
+        }
+        System.out.println(name + " ops/s:" + rounds);
+    }
+}